@@ -5,14 +5,14 @@
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
-public class AIPlayer {
+public class AIPlayer implements Engine {
     private static final boolean DEBUG = false;
     private static final int MAX_DEPTH = 32;
-    private static final double TIME_LIMIT_SECONDS = 13.8;
     private static final long NANOSECONDS_PER_SECOND = 1_000_000_000L;
-    private static final long MAX_TIME = (long)(TIME_LIMIT_SECONDS * NANOSECONDS_PER_SECOND);
+    private static final long PONDER_TIME = 3600 * NANOSECONDS_PER_SECOND; // until the reply is known
     private static final boolean USE_FIXED_SEED = false;
     private static final long FIXED_SEED = 2398558964L;
     private static final long GLOBAL_SEED = USE_FIXED_SEED ? FIXED_SEED : System.nanoTime();
@@ -20,10 +20,13 @@ public class AIPlayer {
     private static final ThreadLocal < Random > threadRandom = ThreadLocal.withInitial(() ->
             new Random(GLOBAL_SEED + Thread.currentThread().threadId()));
 
-    private static final int CONVERGENCE_THRESHOLD = 12;
+    // scores are kept well inside the long range so negamax can negate them freely
+    private static final long SCORE_INFINITY = 1_000_000_000L;
+    static final long WIN_SCORE = 1_000_000L;
 
-    private static final long[][] ZOBRIST_TABLE = new long[Coordinate.NCubed][2];
-    private static final long EMPTY_ZOBRIST = threadRandom.get().nextLong();
+    // after a null move the side to move no longer follows from the piece counts
+    private static final long NULL_MOVE_KEY = 0x5A17C0FFEE15F00DL;
+    private static final int NULL_MOVE_MIN_DEPTH = 3;
 
     private static final int[][] OPTIMAL_PAIRS = {
             {
@@ -44,50 +47,188 @@ public class AIPlayer {
             }
     };
 
-    static {
-        // Initialize Zobrist table
-        for (int pos = 0; pos < Coordinate.NCubed; pos++) {
-            ZOBRIST_TABLE[pos][0] = threadRandom.get().nextLong(); // player X
-            ZOBRIST_TABLE[pos][1] = threadRandom.get().nextLong(); // player O
+    static class MoveEvaluation {
+        final int move;
+        final long value;
+        final boolean exact; // false when a scout search only proved an upper bound
+
+        MoveEvaluation(int move, long value) {
+            this(move, value, true);
+        }
+
+        MoveEvaluation(int move, long value, boolean exact) {
+            this.move = move;
+            this.value = value;
+            this.exact = exact;
         }
     }
 
-    private static class TranspositionEntry {
-        final long value;
-        final int depth;
-        final int flag; // 0: exact, 1: lower bound, 2: upper bound
+    /**
+     * Per-thread search state. The counters are plain longs owned by a single thread
+     * and are folded into the shared totals once the worker is done.
+     */
+    private static class SearchWorker {
+        final Position board;
+        final boolean helper;
+        final boolean ybwc;
+        final SplitPoint splitPoint;
+        final MoveOrdering ordering;
+        boolean stopped;
+        long nodes;
+        long ttHits;
+        long ttMisses;
+        long pvsResearches;
+        long symmetryPrunes;
+        long quiescenceNodes;
+        int quiescenceBudget;
+        long nullMoveTries;
+        long nullMoveCutoffs;
+        long nullMoveVerifyFails;
+        long lmrReductions;
+        long lmrResearches;
+        long futilityPrunes;
+        long evaluations;
+        long evalCacheHits;
+        long treeHash;         // folds in the key of every node visited, in order
+        int nullMovePly = -2; // ply of the null move on the current path, if any
+        boolean nullMoveSide;  // an odd number of null moves on the path: flip the key
+        int verifying;         // null moves are off below a verification search
+        final int[] stabilizer = new int[Symmetry.COUNT];
+        // move and score lists per ply, reused by every node at that ply
+        final int[][] moveStack = new int[MoveOrdering.MAX_PLY][];
+        final int[][] scoreStack = new int[MoveOrdering.MAX_PLY][];
+
+        SearchWorker(Position board, boolean helper, int[][] history) {
+            this(board, helper, false, null, history);
+        }
 
-        TranspositionEntry(long value, int depth, int flag) {
-            this.value = value;
-            this.depth = depth;
-            this.flag = flag;
+        SearchWorker(Position board, boolean helper, boolean ybwc, SplitPoint splitPoint, int[][] history) {
+            this.board = board;
+            this.helper = helper;
+            this.ybwc = ybwc;
+            this.splitPoint = splitPoint;
+            this.ordering = new MoveOrdering(history);
+        }
+
+        /**
+         * The move list for a ply. Rows are allocated on first use, so a worker that
+         * only searches a short YBWC subtree stays small.
+         */
+        int[] moves(int ply) {
+            if (moveStack[ply] == null) {
+                moveStack[ply] = new int[Coordinate.NCubed];
+                scoreStack[ply] = new int[Coordinate.NCubed];
+            }
+            return moveStack[ply];
+        }
+
+        int[] scores(int ply) {
+            moves(ply);
+            return scoreStack[ply];
         }
     }
 
-    static class MoveEvaluation {
-        final int move;
-        final long value;
+    // a search running on the opponent's time, on the position after the predicted reply
+    private static class Ponder {
+        final Board board;
+        final int predicted;
+        final long started = System.nanoTime();
+        final Future < Integer > result;
+        volatile boolean resolved;
+        volatile boolean hit;
+
+        Ponder(Board board, int predicted, Future < Integer > result) {
+            this.board = board;
+            this.predicted = predicted;
+            this.result = result;
+        }
+    }
 
-        MoveEvaluation(int move, long value) {
+    /**
+     * A YBWC split node. Younger siblings searched in parallel share its alpha, and
+     * a sibling that fails high sets the abort flag, which every search below this
+     * node (including nested split points) sees through the parent chain.
+     */
+    private static class SplitPoint {
+        final SplitPoint parent;
+        final AtomicLong alpha;
+        final long beta;
+        volatile boolean aborted;
+
+        SplitPoint(SplitPoint parent, long alpha, long beta) {
+            this.parent = parent;
+            this.alpha = new AtomicLong(alpha);
+            this.beta = beta;
+        }
+
+        boolean isAborted() {
+            for (SplitPoint sp = this; sp != null; sp = sp.parent) {
+                if (sp.aborted) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class YbwcTask extends RecursiveTask < MoveEvaluation > {
+        private static final long serialVersionUID = 1L;
+
+        private final transient AIPlayer aiInstance;
+        private final transient SplitPoint splitPoint;
+        private final transient Position board;
+        private final int move;
+        private final int depth;
+        private final Player toMove;
+        private final int ply;
+        private final boolean root;
+        // the splitting worker's null-move state, so keys and verification carry over
+        private final int nullMovePly;
+        private final boolean nullMoveSide;
+        private final int verifying;
+
+        YbwcTask(AIPlayer aiInstance, SplitPoint splitPoint, SearchWorker parent, int move, int depth,
+                 Player toMove, int ply, boolean root) {
+            this.aiInstance = aiInstance;
+            this.splitPoint = splitPoint;
+            this.board = parent.board.copy();
             this.move = move;
-            this.value = value;
+            this.depth = depth;
+            this.toMove = toMove;
+            this.ply = ply;
+            this.root = root;
+            this.nullMovePly = parent.nullMovePly;
+            this.nullMoveSide = parent.nullMoveSide;
+            this.verifying = parent.verifying;
+        }
+
+        @Override
+        protected MoveEvaluation compute() {
+            return aiInstance.searchYoungerSibling(this);
         }
     }
 
     private static class MinimaxTask extends RecursiveTask < MoveEvaluation > {
-        private final Board board;
+        private static final long serialVersionUID = 1L;
+
+        private final transient Position board;
         private final int move;
         private final int depth;
+        private final boolean eldest;
+        private final AtomicLong sharedAlpha;
+        private final long beta;
         private final Player aiPlayer;
         private final long endTime;
-        private final AIPlayer aiInstance;
+        private final transient AIPlayer aiInstance;
 
-        MinimaxTask(Board b, int move, int depth, Player ai, long endTime, AIPlayer aiInstance) {
-            this.board = new Board();
-            this.board.xPositions = b.xPositions;
-            this.board.oPositions = b.oPositions;
+        MinimaxTask(Position b, int move, int depth, boolean eldest, AtomicLong sharedAlpha, long beta,
+                    Player ai, long endTime, AIPlayer aiInstance) {
+            this.board = b.copy();
             this.move = move;
             this.depth = depth;
+            this.eldest = eldest;
+            this.sharedAlpha = sharedAlpha;
+            this.beta = beta;
             this.aiPlayer = ai;
             this.endTime = endTime;
             this.aiInstance = aiInstance;
@@ -99,79 +240,423 @@ public class AIPlayer {
                 aiInstance.timeUp = true;
                 return null;
             }
+            SearchWorker w = new SearchWorker(board, false, aiInstance.history);
             board.makeMove(move, aiPlayer);
-            long val = aiInstance.minimax(board, depth - 1, Long.MIN_VALUE, Long.MAX_VALUE, false, aiPlayer, aiInstance.maxDepth);
+            // siblings share the best root score found so far and scout against it
+            long alpha = sharedAlpha.get();
+            boolean exact = true;
+            long val;
+            if (eldest || !aiInstance.config.PVS) {
+                val = -aiInstance.negamax(w, depth - 1, -beta, -alpha, aiPlayer.other(), aiPlayer, 1);
+            } else {
+                val = -aiInstance.negamax(w, depth - 1, -alpha - 1, -alpha, aiPlayer.other(), aiPlayer, 1);
+                if (val > alpha && val < beta && !w.stopped) {
+                    val = -aiInstance.negamax(w, depth - 1, -beta, -alpha, aiPlayer.other(), aiPlayer, 1);
+                } else if (val <= alpha) {
+                    exact = false;
+                }
+            }
+            aiInstance.collect(w);
+            if (w.stopped) {
+                return null;
+            }
+            if (exact && aiInstance.config.PVS) {
+                sharedAlpha.accumulateAndGet(val, Math::max);
+            }
             if (DEBUG) {
                 System.out.println("[DEBUG] Parallel task move: " + move + " depth: " + depth + " val: " + val);
             }
-            return new MoveEvaluation(move, val);
+            return new MoveEvaluation(move, val, exact);
         }
     }
 
     private final Player aiPlayer;
     private final Weights weights;
+    private final long futilityMargin;
+    private final EngineConfig config;
     private final int maxDepth;
-    private final long maxTime;
+    private final TimeManager timeManager;
     private final Player opponent;
     private volatile long endTime;
     private volatile boolean timeUp;
+    private volatile boolean helpersStop;
     private volatile int bestMoveSoFar;
     private volatile int lastDepth;
+    private volatile long lastScore;
     private int lastBestMove = -1;
-    private int consistentMoveCount = 0;
-    private final ConcurrentHashMap < Long, TranspositionEntry > transpositionTable = new ConcurrentHashMap < > ();
+    private final TranspositionTable transpositionTable;
+    private final EvalCache evalCache; // null when EVAL_CACHE_MB is 0
+    private EngineExecutor executor = EngineExecutor.shared();
+    private volatile EngineExecutor.Search currentSearch;
+    private volatile Ponder ponder;
+    private final AtomicLong ponderHits = new AtomicLong(0);
+    private final AtomicLong ponderMisses = new AtomicLong(0);
+    private final AtomicLong ponderNanosSaved = new AtomicLong(0);
+    private final int[][] history = MoveOrdering.newHistoryTable();
+    private final ThreatSearch threatSearch;
+    private volatile int threatWinPlies;
+    private volatile int opponentThreatPlies;
+    private volatile String threatWarning = "";
+    private final AtomicLong threatNodes = new AtomicLong(0);
+    private final AtomicLong bookHits = new AtomicLong(0);
+    private volatile boolean lastMoveFromBook;
+    private EndgameSolver endgameSolver; // created on the first endgame
+    private final AtomicLong endgameSolves = new AtomicLong(0);
+    private final AtomicLong endgameNodes = new AtomicLong(0);
+    private volatile String endgameResult = "";
     private final AtomicLong nodeCount = new AtomicLong(0);
     private final AtomicLong transpositionHits = new AtomicLong(0);
     private final AtomicLong transpositionMisses = new AtomicLong(0);
+    private final AtomicLong pvsResearches = new AtomicLong(0);
+    private final AtomicLong symmetryPrunes = new AtomicLong(0);
+    private final AtomicLong quiescenceNodes = new AtomicLong(0);
+    private final AtomicLong nullMoveTries = new AtomicLong(0);
+    private final AtomicLong nullMoveCutoffs = new AtomicLong(0);
+    private final AtomicLong nullMoveVerifyFails = new AtomicLong(0);
+    private final AtomicLong lmrReductions = new AtomicLong(0);
+    private final AtomicLong lmrResearches = new AtomicLong(0);
+    private final AtomicLong futilityPrunes = new AtomicLong(0);
+    private final AtomicLong betaCutoffs = new AtomicLong(0);
+    private final AtomicLong firstMoveCutoffs = new AtomicLong(0);
+    private final AtomicLong helperNodes = new AtomicLong(0);
+    private final AtomicInteger helperDepth = new AtomicInteger(0);
+    private final AtomicLong aspirationResearches = new AtomicLong(0);
     private final AtomicLong totalSearches = new AtomicLong(0);
     private final AtomicLong totalNodesEvaluated = new AtomicLong(0);
+    private final AtomicLong treeHash = new AtomicLong(0);
+    private final AtomicLong evaluations = new AtomicLong(0);
+    private final AtomicLong evalCacheHits = new AtomicLong(0);
+    private volatile long searchChecksum;
+    private final Random seededRandom; // DETERMINISTIC only
 
     public AIPlayer(Player aiPlayer, int maxDepth) {
+        this(aiPlayer, maxDepth, new EngineConfig());
+    }
+
+    public AIPlayer(Player aiPlayer, int maxDepth, EngineConfig config) {
         this.aiPlayer = aiPlayer;
         this.opponent = aiPlayer.other();
         this.weights = new Weights(true);
+        this.futilityMargin = futilityMargin(weights);
+        this.config = config;
+        this.transpositionTable = new TranspositionTable(config.TT_SIZE_MB);
+        this.evalCache = (config.EVAL_CACHE_MB > 0) ? new EvalCache(config.EVAL_CACHE_MB) : null;
+        this.threatSearch = new ThreatSearch(ThreatSearch.DEFAULT_MAX_THREATS, config.THREAT_SEARCH_NODES);
 
         this.maxDepth = Math.max(1, Math.min(maxDepth, MAX_DEPTH));
-        this.maxTime = 999_999_999_999L; // effectively no time limit
+        this.timeManager = TimeManager.unlimited();
+        this.seededRandom = config.DETERMINISTIC ? new Random(config.SEED) : null;
     }
 
     public AIPlayer(Player aiPlayer, Weights weights) {
+        this(aiPlayer, weights, new EngineConfig());
+    }
+
+    public AIPlayer(Player aiPlayer, Weights weights, EngineConfig config) {
         this.aiPlayer = aiPlayer;
         this.opponent = aiPlayer.other();
         this.weights = weights;
+        this.futilityMargin = futilityMargin(weights);
+        this.config = config;
+        this.transpositionTable = new TranspositionTable(config.TT_SIZE_MB);
+        this.evalCache = (config.EVAL_CACHE_MB > 0) ? new EvalCache(config.EVAL_CACHE_MB) : null;
+        this.threatSearch = new ThreatSearch(ThreatSearch.DEFAULT_MAX_THREATS, config.THREAT_SEARCH_NODES);
         this.maxDepth = MAX_DEPTH;
-        this.maxTime = MAX_TIME;
+        this.timeManager = config.DETERMINISTIC ? TimeManager.unlimited() : new TimeManager(config);
+        this.seededRandom = config.DETERMINISTIC ? new Random(config.SEED) : null;
     }
 
     public AIPlayer(Player aiPlayer) {
-        this.aiPlayer = aiPlayer;
-        this.opponent = aiPlayer.other();
-        this.weights = new Weights(true);
-        this.maxDepth = MAX_DEPTH;
-        this.maxTime = MAX_TIME;
+        this(aiPlayer, new Weights(true));
+    }
+
+    private Random random() {
+        return (seededRandom != null) ? seededRandom : threadRandom.get();
+    }
+
+    /**
+     * How much one quiet move can raise the evaluation: a new fork threat with its
+     * open twos, a fork of its own, and an opponent fork taken away.
+     */
+    private static long futilityMargin(Weights w) {
+        return 4L * w.SCORE_THREE + w.PLAYER_FORKS_MULTIPLIER + w.OPPONENT_POTENTIAL_FORKS_PENALTY;
     }
 
     public int chooseBestMove(Board board) {
+        Ponder p = ponder;
+        ponder = null;
+        if (p != null) {
+            if (!p.resolved) {
+                boolean hit = board.xPositions == p.board.xPositions && board.oPositions == p.board.oPositions;
+                ponderReply(p, hit ? p.predicted : -1);
+            }
+            Integer pondered = awaitPonder(p);
+            if (p.hit && pondered != null && pondered != -1) {
+                timeManager.endMove();
+                return pondered;
+            }
+        }
+        timeManager.startMove(Coordinate.NCubed - board.totalMoves());
+        endTime = timeManager.hardDeadline();
+        int move = search(board, false);
+        timeManager.endMove();
+        searchChecksum = checksum(nodeCount.get(), move, lastScore, treeHash.get());
+        return move;
+    }
+
+    /**
+     * Multi-PV analysis: the k best moves for the side to move, which must be this
+     * player, with exact scores and principal variations. Unlike chooseBestMove()
+     * there is no book, no threat search and no random choice between equal moves.
+     * The depth or time limit is the player's own. Symmetric moves are listed once.
+     * k is clamped to 1..the number of empty cells.
+     */
+    public SearchResult analyze(Board board, int k) {
+        if (Position.sideToMove(board) != aiPlayer) {
+            throw new IllegalArgumentException("It is not " + aiPlayer + "'s move");
+        }
+        k = Math.max(1, Math.min(k, Coordinate.NCubed - board.totalMoves()));
+        stopPondering();
+        long start = System.nanoTime();
+        timeManager.startMove(Coordinate.NCubed - board.totalMoves());
+        endTime = timeManager.hardDeadline();
+        Position root = new Position(board);
+        if (config.SYMMETRY) {
+            root.trackSymmetry(config.SYMMETRY_MAX_PIECES);
+        }
+        timeUp = false;
+        lastBestMove = -1;
+        nodeCount.set(0);
+        totalSearches.incrementAndGet();
+        transpositionTable.newSearch();
+
+        List < SearchResult.Variation > variations = new ArrayList < > ();
+        int completedDepth = 0;
+        final EngineExecutor.Search search = executor.begin();
+        currentSearch = search;
+        try (search) {
+            SearchWorker w = new SearchWorker(root, false, history);
+            List < Integer > order = orderRootMoves(root);
+            long prevNodes = 0;
+            int prevBest = -1;
+            long prevScore = 0;
+            for (int depth = 1; depth <= maxDepth && !order.isEmpty(); depth++) {
+                long iterationStart = System.nanoTime();
+                List < MoveEvaluation > results = new ArrayList < > ();
+                searchRootMultiPv(w, order, depth, k, results);
+                if (timeUp) {
+                    break;
+                }
+
+                // exact scores best first, then the moves only bounded, in the old order
+                List < MoveEvaluation > ranked = new ArrayList < > (results);
+                ranked.sort((m1, m2) -> m1.exact != m2.exact ? (m1.exact ? -1 : 1) :
+                        m1.exact ? Long.compare(m2.value, m1.value) : 0);
+                variations.clear();
+                order = new ArrayList < > ();
+                for (MoveEvaluation r: ranked) {
+                    order.add(r.move);
+                    if (r.exact && variations.size() < k) {
+                        variations.add(new SearchResult.Variation(r.move, r.value, depth,
+                                principalVariation(root, r.move, depth)));
+                    }
+                }
+                completedDepth = depth;
+                lastDepth = depth;
+                lastScore = ranked.get(0).value;
+                lastBestMove = ranked.get(0).move;
+
+                long nodes = nodeCount.get() + w.nodes;
+                boolean flipped = depth > 1 && lastBestMove != prevBest;
+                long scoreDrop = depth > 1 ? prevScore - lastScore : 0;
+                prevBest = lastBestMove;
+                prevScore = lastScore;
+                if (!timeManager.nextIteration(depth, System.nanoTime() - iterationStart, nodes - prevNodes, flipped, scoreDrop)) {
+                    break;
+                }
+                prevNodes = nodes;
+            }
+            collect(w);
+            timeUp = true;
+        }
+        timeManager.endMove();
+        totalNodesEvaluated.addAndGet(nodeCount.get());
+        return new SearchResult(variations, completedDepth, nodeCount.get(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Starts searching, on the executor, the position after the opponent's most
+     * likely reply, while the opponent thinks. board is the position after our own
+     * move. The next chooseBestMove() (or ponderReply()) decides whether the guess
+     * was right: on a hit the running search becomes the real one and gets the
+     * usual time from that moment on; on a miss it is cancelled and only the
+     * warmed-up transposition table is kept.
+     */
+    public void startPondering(Board board) {
+        stopPondering();
+        if (!config.PONDER || config.DETERMINISTIC || board.hasWon(aiPlayer) || board.isFull()) {
+            return;
+        }
+        Position after = new Position(board);
+        if (config.SYMMETRY) {
+            after.trackSymmetry(config.SYMMETRY_MAX_PIECES);
+        }
+        int predicted = predictReply(after);
+        if (predicted < 0) {
+            return;
+        }
+        Board ponderBoard = Board.valueOf(board.toString());
+        ponderBoard.makeMove(predicted, opponent);
+        if (ponderBoard.hasWon(opponent) || ponderBoard.isFull()) {
+            return;
+        }
+        timeManager.startPonder();
+        endTime = System.nanoTime() + PONDER_TIME;
+        ponder = new Ponder(ponderBoard, predicted, executor.submit(() -> search(ponderBoard, true)));
+        if (DEBUG) {
+            System.out.println("[DEBUG] Pondering on reply " + predicted);
+        }
+    }
+
+    /**
+     * Tells a pondering engine which move the opponent played, as soon as it is
+     * known, so a hit starts its clock and a miss stops the wasted search early.
+     */
+    public void ponderReply(int move) {
+        Ponder p = ponder;
+        if (p != null) {
+            ponderReply(p, move);
+        }
+    }
+
+    private synchronized void ponderReply(Ponder p, int move) {
+        if (p.resolved) {
+            return;
+        }
+        p.resolved = true;
+        long now = System.nanoTime();
+        if (move == p.predicted) {
+            p.hit = true;
+            ponderHits.incrementAndGet();
+            ponderNanosSaved.addAndGet(now - p.started);
+            timeManager.startMove(Coordinate.NCubed - p.board.totalMoves());
+            endTime = timeManager.hardDeadline();
+        } else {
+            ponderMisses.incrementAndGet();
+            endTime = now; // also stops a search that has not taken its handle yet
+            cancelSearch();
+        }
+    }
+
+    /**
+     * Cancels pondering, e.g. when the game ends, and waits for the search to stop.
+     */
+    public void stopPondering() {
+        Ponder p = ponder;
+        ponder = null;
+        if (p != null) {
+            synchronized (this) {
+                if (!p.resolved) {
+                    p.resolved = true;
+                    endTime = System.nanoTime();
+                    cancelSearch();
+                }
+            }
+            awaitPonder(p);
+        }
+    }
+
+    private Integer awaitPonder(Ponder p) {
+        try {
+            return p.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ponder search failed", e.getCause());
+        }
+    }
+
+    /**
+     * The opponent's reply in the principal variation, from the transposition table
+     * entry of the position after our move; without one, the opponent's winning or
+     * blocking move or else its best move by static evaluation.
+     */
+    private int predictReply(Position after) {
+        int sym = (config.SYMMETRY && after.hasSymmetryHashes()) ? Symmetry.canonical(after.symmetryHashes()) : -1;
+        long entry = transpositionTable.probe((sym >= 0) ? after.symmetryHashes()[sym] : after.hash());
+        int move = (entry != 0) ? TranspositionTable.move(entry) : -1;
+        if (sym >= 0 && move >= 0) {
+            move = Symmetry.transformCell(Symmetry.inverse(sym), move);
+        }
+        if (move >= 0 && after.get(move) == null) {
+            return move;
+        }
+        move = findImmediateWinMove(after, opponent);
+        if (move == -1) {
+            move = findImmediateBlockMove(after, aiPlayer);
+        }
+        if (move != -1) {
+            return move;
+        }
+        long bestEval = Long.MIN_VALUE;
+        for (int mv: after.getAvailableMoves()) {
+            after.makeMove(mv, opponent);
+            long eval = Heuristic.evaluate(after, opponent, weights);
+            after.undoMove(mv);
+            if (eval > bestEval) {
+                bestEval = eval;
+                move = mv;
+            }
+        }
+        return move;
+    }
+
+    private int search(Board board, boolean ponder) {
         if (DEBUG) {
-            System.out.println("[DEBUG] Starting chooseBestMove.");
+            System.out.println("[DEBUG] Starting " + (ponder ? "ponder search." : "chooseBestMove."));
         }
 
-        Board mBoard = new Board();
-        mBoard.xPositions = board.xPositions;
-        mBoard.oPositions = board.oPositions;
+        Position mBoard = new Position(board);
+        if (config.SYMMETRY) {
+            mBoard.trackSymmetry(config.SYMMETRY_MAX_PIECES);
+        }
 
         bestMoveSoFar = -1;
+        lastScore = 0;
         timeUp = false;
-        endTime = System.nanoTime() + maxTime;
 
         nodeCount.set(0);
         transpositionHits.set(0);
         transpositionMisses.set(0);
+        evaluations.set(0);
+        evalCacheHits.set(0);
+        pvsResearches.set(0);
+        symmetryPrunes.set(0);
+        quiescenceNodes.set(0);
+        betaCutoffs.set(0);
+        firstMoveCutoffs.set(0);
+        helperNodes.set(0);
+        helperDepth.set(0);
+        aspirationResearches.set(0);
+        treeHash.set(0);
+        searchChecksum = 0;
+        threatNodes.set(0);
+        threatWinPlies = 0;
+        opponentThreatPlies = 0;
+        threatWarning = "";
+        lastMoveFromBook = false;
+        endgameResult = "";
         totalSearches.incrementAndGet();
+        transpositionTable.newSearch();
 
-        final Thread progressBarThread = getProgressBarThread();
+        final EngineExecutor.Search search = executor.begin();
+        currentSearch = search;
+        if (!ponder) {
+            startProgressBar(search);
+        }
 
-        try (ForkJoinPool forkJoinPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors())) {
+        try (search) {
 
             if (DEBUG) {
                 System.out.println("[DEBUG] Board initial state: ");
@@ -181,13 +666,12 @@ public class AIPlayer {
             }
 
             if (mBoard.isEmpty()) {
-                int i1 = threadRandom.get().nextInt(OPTIMAL_PAIRS.length);
-                int i2 = threadRandom.get().nextInt(OPTIMAL_PAIRS[i1].length);
+                int i1 = random().nextInt(OPTIMAL_PAIRS.length);
+                int i2 = random().nextInt(OPTIMAL_PAIRS[i1].length);
                 int firstOptimalMove = OPTIMAL_PAIRS[i1][i2];
 
                 timeUp = true;
-                joinProgressBarThread(progressBarThread);
-                forkJoinPool.shutdownNow();
+                search.close();
 
                 if (DEBUG) {
                     System.out.println("[DEBUG] Board empty, choosing optimal first move: " + firstOptimalMove);
@@ -202,16 +686,14 @@ public class AIPlayer {
 
                     if (mBoard.get(moveA) == opponent) {
                         timeUp = true;
-                        joinProgressBarThread(progressBarThread);
-                        forkJoinPool.shutdownNow();
+                        search.close();
                         if (DEBUG) {
                             System.out.println("[DEBUG] Opponent took " + moveA + ", responding with " + moveB);
                         }
                         return moveB;
                     } else if (mBoard.get(moveB) == opponent) {
                         timeUp = true;
-                        joinProgressBarThread(progressBarThread);
-                        forkJoinPool.shutdownNow();
+                        search.close();
                         if (DEBUG) {
                             System.out.println("[DEBUG] Opponent took " + moveB + ", responding with " + moveA);
                         }
@@ -220,12 +702,28 @@ public class AIPlayer {
                 }
             }
 
+            // positions that recur every game come straight from the precomputed book
+            if (config.OPENING_BOOK != null) {
+                OpeningBook book = OpeningBook.open(config.OPENING_BOOK);
+                OpeningBook.Entry bookEntry = (book != null) ? book.lookup(mBoard) : null;
+                if (bookEntry != null && mBoard.get(bookEntry.move) == null) {
+                    bookHits.incrementAndGet();
+                    lastMoveFromBook = true;
+                    lastScore = bookEntry.score;
+                    lastDepth = bookEntry.depth;
+                    timeUp = true;
+                    search.close();
+                    if (DEBUG) {
+                        System.out.println("[DEBUG] Book move: " + bookEntry.move + " (depth " + bookEntry.depth + ")");
+                    }
+                    return bookEntry.move;
+                }
+            }
+
             int immediateWinMove = findImmediateWinMove(mBoard, aiPlayer);
             if (immediateWinMove != -1) {
-                Thread.sleep(340);
                 timeUp = true;
-                joinProgressBarThread(progressBarThread);
-                forkJoinPool.shutdownNow();
+                search.close();
                 if (DEBUG) {
                     System.out.println("[DEBUG] Found immediate win move: " + immediateWinMove);
                 }
@@ -234,93 +732,138 @@ public class AIPlayer {
 
             int immediateBlockMove = findImmediateBlockMove(mBoard, opponent);
             if (immediateBlockMove != -1) {
-                Thread.sleep(180);
                 timeUp = true;
-                joinProgressBarThread(progressBarThread);
-                forkJoinPool.shutdownNow();
+                search.close();
                 if (DEBUG) {
                     System.out.println("[DEBUG] Found immediate block move: " + immediateBlockMove);
                 }
                 return immediateBlockMove;
             }
 
+            // forced wins through continuous threats, far beyond the main search's horizon
+            ThreatSearch.Result opponentThreat = null;
+            if (config.THREAT_SEARCH) {
+                ThreatSearch.Result threatWin = threatSearch.findWin(mBoard, aiPlayer);
+                threatNodes.addAndGet(threatSearch.nodes());
+                if (threatWin != null) {
+                    threatWinPlies = threatWin.plies;
+                    lastScore = WIN_SCORE;
+                    timeUp = true;
+                    search.close();
+                    if (DEBUG) {
+                        System.out.println("[DEBUG] Threat search found a " + threatWin);
+                    }
+                    return threatWin.move;
+                }
+                opponentThreat = threatSearch.findWin(mBoard, opponent);
+                threatNodes.addAndGet(threatSearch.nodes());
+                if (opponentThreat != null) {
+                    opponentThreatPlies = opponentThreat.plies;
+                    if (DEBUG) {
+                        System.out.println("[DEBUG] Opponent threatens a " + opponentThreat);
+                    }
+                }
+            }
+
+            // few empty cells left: solve the position outright instead of estimating it
+            int empties = Coordinate.NCubed - mBoard.totalMoves();
+            if (config.ENDGAME_SOLVER && empties <= config.ENDGAME_EMPTIES) {
+                if (endgameSolver == null) {
+                    endgameSolver = new EndgameSolver();
+                }
+                long now = System.nanoTime();
+                long deadline = config.DETERMINISTIC ? 0 : now + (endTime - now) / 2;
+                EndgameSolver.Result solved = endgameSolver.solve(mBoard, config.ENDGAME_NODES, deadline);
+                endgameNodes.addAndGet(endgameSolver.nodes());
+                if (solved != null && solved.move >= 0 && mBoard.get(solved.move) == null) {
+                    endgameSolves.incrementAndGet();
+                    endgameResult = solved.toString();
+                    lastScore = Integer.signum(solved.score) * WIN_SCORE;
+                    lastDepth = empties;
+                    timeUp = true;
+                    search.close();
+                    if (DEBUG) {
+                        System.out.println("[DEBUG] Endgame solver: " + solved);
+                    }
+                    return solved.move;
+                }
+                if (DEBUG) {
+                    System.out.println("[DEBUG] Endgame solver gave up after " + endgameSolver.nodes() + " nodes");
+                }
+            }
+
+            // a deterministic search runs on this thread alone
+            boolean deterministic = config.DETERMINISTIC;
+            boolean lazySmp = !deterministic && config.PARALLEL == EngineConfig.ParallelStrategy.LAZY_SMP;
+            boolean ybwc = !deterministic && config.PARALLEL == EngineConfig.ParallelStrategy.YBWC;
+            List < Future < ? >> helpers = lazySmp ? startHelpers(search, mBoard) : Collections.emptyList();
+            SearchWorker mainWorker = new SearchWorker(mBoard, false, ybwc, null, history);
+
+            long prevScore = 0;
+            int prevBestMove = -1;
+            long prevNodes = 0;
+            List < MoveEvaluation > lastResults = Collections.emptyList();
             for (int depth = 1; depth <= maxDepth; depth++) {
+                long iterationStart = System.nanoTime();
                 if (DEBUG) {
                     System.out.println("[DEBUG] Starting depth " + depth);
                 }
 
                 long bestVal = Long.MIN_VALUE;
                 List < Integer > bestMovesD = new ArrayList < > ();
-                List < Integer > availMoves = mBoard.getAvailableMoves();
+                List < Integer > availMoves = orderRootMoves(mBoard);
 
-                Map < Integer, Long > moveScores = new HashMap < > ();
-                for (int mv: availMoves) {
-                    mBoard.makeMove(mv, aiPlayer);
-                    long eval = Heuristic.evaluate(mBoard, aiPlayer, weights);
-                    moveScores.put(mv, eval);
-                    mBoard.undoMove(mv);
+                if (DEBUG) {
+                    System.out.println("[DEBUG] Depth " + depth + " available moves: " + availMoves);
                 }
-                availMoves.sort((m1, m2) -> Long.compare(moveScores.get(m2), moveScores.get(m1)));
 
-                if (DEBUG) {
-                    System.out.println("[DEBUG] Depth " + depth + " available moves: " + availMoves.size());
-                    System.out.println("[DEBUG] Move scores: " + moveScores);
+                long alpha = -SCORE_INFINITY;
+                long beta = SCORE_INFINITY;
+                long delta = config.ASPIRATION_WINDOW;
+                if (config.ASPIRATION && depth > 1 && Math.abs(prevScore) < WIN_SCORE) {
+                    alpha = prevScore - delta;
+                    beta = prevScore + delta;
                 }
 
                 List < MoveEvaluation > results = new ArrayList < > ();
-                long currentTime = System.nanoTime();
-                boolean parallel = shouldParallelize(depth, maxDepth, availMoves, currentTime, endTime);
+                while (true) {
+                    results.clear();
+                    long currentTime = System.nanoTime();
+                    boolean parallel = !deterministic && !lazySmp && !ybwc && shouldParallelize(depth, maxDepth, availMoves, currentTime, endTime);
 
-                if (DEBUG) {
-                    System.out.println("[DEBUG] Depth " + depth + " parallel decision: " + parallel);
-                }
-
-                if (!timeUp && parallel && !availMoves.isEmpty()) {
                     if (DEBUG) {
-                        System.out.println("[DEBUG] Depth " + depth + " - Running moves in parallel.");
-                    }
-
-                    List < MinimaxTask > tasks = new ArrayList < > ();
-                    for (int mv: availMoves) {
-                        if (System.nanoTime() >= endTime) {
-                            timeUp = true;
-                            lastDepth = depth - 1;
-                            break;
-                        }
-                        Board newBrd = new Board();
-                        newBrd.xPositions = mBoard.xPositions;
-                        newBrd.oPositions = mBoard.oPositions;
-                        tasks.add(new MinimaxTask(newBrd, mv, depth, aiPlayer, endTime, this));
+                        System.out.println("[DEBUG] Depth " + depth + " parallel decision: " + parallel +
+                                " window: [" + alpha + ", " + beta + "]");
                     }
 
-                    for (MinimaxTask t: tasks) {
-                        t.fork();
+                    if (!timeUp && ybwc && !availMoves.isEmpty()) {
+                        searchRootYbwc(mainWorker, availMoves, depth, alpha, beta, results);
+                    } else if (!timeUp && parallel && !availMoves.isEmpty()) {
+                        searchRootParallel(mBoard, availMoves, depth, alpha, beta, results);
+                    } else {
+                        searchRoot(mainWorker, availMoves, depth, alpha, beta, results);
                     }
 
-                    for (MinimaxTask t: tasks) {
-                        MoveEvaluation res = t.join();
-                        if (res != null) {
-                            results.add(res);
-                        }
+                    if (timeUp || results.isEmpty()) {
+                        break;
                     }
 
-                } else {
-                    if (DEBUG) {
-                        System.out.println("[DEBUG] Depth " + depth + " - Running moves sequentially.");
+                    long iterationBest = Long.MIN_VALUE;
+                    for (MoveEvaluation r: results) {
+                        iterationBest = Math.max(iterationBest, r.value);
                     }
 
-                    for (int mv: availMoves) {
-                        if (System.nanoTime() >= endTime) {
-                            timeUp = true;
-                            lastDepth = depth - 1;
-                            break;
-                        }
-                        Board newBrd = new Board();
-                        newBrd.xPositions = mBoard.xPositions;
-                        newBrd.oPositions = mBoard.oPositions;
-                        newBrd.makeMove(mv, aiPlayer);
-                        long val = minimax(newBrd, depth - 1, Long.MIN_VALUE, Long.MAX_VALUE, false, aiPlayer, maxDepth);
-                        results.add(new MoveEvaluation(mv, val));
+                    // widen the aspiration window on the failing side and search again
+                    if (iterationBest <= alpha && alpha > -SCORE_INFINITY) {
+                        delta *= 4;
+                        alpha = Math.max(-SCORE_INFINITY, prevScore - delta);
+                        aspirationResearches.incrementAndGet();
+                    } else if (iterationBest >= beta && beta < SCORE_INFINITY) {
+                        delta *= 4;
+                        beta = Math.min(SCORE_INFINITY, prevScore + delta);
+                        aspirationResearches.incrementAndGet();
+                    } else {
+                        break;
                     }
                 }
 
@@ -333,6 +876,9 @@ public class AIPlayer {
                 }
 
                 for (MoveEvaluation r: results) {
+                    if (!r.exact) {
+                        continue;
+                    }
                     if (r.value > bestVal) {
                         bestVal = r.value;
                         bestMovesD.clear();
@@ -342,25 +888,17 @@ public class AIPlayer {
                     }
                 }
 
+                // YBWC is meant to be reproducible, so it settles ties by move order
                 int bestMoveAtDepth = bestMovesD.isEmpty() ? -1 :
-                        bestMovesD.get(threadRandom.get().nextInt(bestMovesD.size()));
-
-                if (bestMoveAtDepth == lastBestMove) {
-                    consistentMoveCount++;
-                    if (consistentMoveCount >= CONVERGENCE_THRESHOLD) {
-                        if (DEBUG) {
-                            System.out.println("[DEBUG] Converged at depth " + depth + ", best move: " + bestMoveAtDepth);
-                        }
-                        lastDepth = depth;
-                        break;
-                    }
-                } else {
-                    consistentMoveCount = 0;
-                }
+                        ybwc ? bestMovesD.get(0) : bestMovesD.get(random().nextInt(bestMovesD.size()));
+                long scoreDrop = (depth > 1) ? prevScore - bestVal : 0;
+                prevScore = bestVal;
+                lastResults = new ArrayList < > (results);
                 lastBestMove = bestMoveAtDepth;
 
                 if (!timeUp && bestMoveAtDepth != -1) {
                     bestMoveSoFar = bestMoveAtDepth;
+                    lastScore = bestVal;
                     if (DEBUG) {
                         System.out.println("[DEBUG] Depth " + depth + " best move: " + bestMoveSoFar + " value: " + bestVal);
                     }
@@ -369,12 +907,27 @@ public class AIPlayer {
                     lastDepth = depth;
                     break;
                 }
+
+                long nodes = nodeCount.get() + mainWorker.nodes;
+                boolean flipped = depth > 1 && bestMoveAtDepth != prevBestMove;
+                prevBestMove = bestMoveAtDepth;
+                if (!timeManager.nextIteration(depth, System.nanoTime() - iterationStart, nodes - prevNodes, flipped, scoreDrop)) {
+                    if (DEBUG) {
+                        System.out.println("[DEBUG] Time manager stops after depth " + depth);
+                    }
+                    break;
+                }
+                prevNodes = nodes;
             }
 
+            stopHelpers(helpers);
+            collect(mainWorker);
+            if (opponentThreat != null && bestMoveSoFar != -1) {
+                bestMoveSoFar = avoidThreatLoss(mBoard, bestMoveSoFar, lastResults);
+            }
             timeUp = true;
             totalNodesEvaluated.addAndGet(nodeCount.get());
-            joinProgressBarThread(progressBarThread);
-            forkJoinPool.shutdownNow();
+            search.close();
 
             if (DEBUG) {
                 System.out.println("[DEBUG] Best move after search: " + bestMoveSoFar);
@@ -387,18 +940,56 @@ public class AIPlayer {
 
             return bestMoveSoFar;
         } catch (Exception e) {
-            System.out.println("[FATAL] Could not allocate CPU cores for ForkJoinPool parallelization.\n" +
+            System.out.println("[FATAL] Search failed: " + e + "\n" +
                     Arrays.toString(e.getStackTrace()));
             System.exit(1);
             return -1;
         }
     }
 
-    private void joinProgressBarThread(Thread progressBarThread) {
-        try {
-            progressBarThread.join();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    /**
+     * The opponent has a forced threat sequence if we pass. If the searched move does
+     * not break it, fall back to the best-scoring root move that does; if none does,
+     * keep the move and report the forced loss. Exact scores come before bounds, which
+     * keep their search order, as in analyze().
+     */
+    private int avoidThreatLoss(Position b, int move, List < MoveEvaluation > ranked) {
+        if (!losesToThreats(b, move)) {
+            return move;
+        }
+        List < MoveEvaluation > byValue = new ArrayList < > (ranked);
+        byValue.sort((m1, m2) -> m1.exact != m2.exact ? (m1.exact ? -1 : 1) :
+                m1.exact ? Long.compare(m2.value, m1.value) : 0);
+        for (MoveEvaluation r: byValue) {
+            if (r.move != move && !losesToThreats(b, r.move)) {
+                threatWarning = "move " + move + " loses to a threat sequence, playing " + r.move;
+                return r.move;
+            }
+        }
+        threatWarning = "forced loss in " + (opponentThreatPlies + 1) + " plies";
+        return move;
+    }
+
+    private boolean losesToThreats(Position b, int move) {
+        b.makeMove(move, aiPlayer);
+        ThreatSearch.Result r = threatSearch.findWin(b, opponent);
+        threatNodes.addAndGet(threatSearch.nodes());
+        b.undoMove(move);
+        return r != null;
+    }
+
+    public void setExecutor(EngineExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Stops the running search, if any, from another thread. The search returns the
+     * best move of its last finished iteration.
+     */
+    public void cancelSearch() {
+        EngineExecutor.Search s = currentSearch;
+        if (s != null) {
+            s.cancel();
         }
     }
 
@@ -408,7 +999,7 @@ public class AIPlayer {
 
         boolean shallowDepth = (maxDepth - depth) < (maxDepth / 4);
         boolean manyMoves = movesCount > 15;
-        boolean plentyOfTime = timeRemaining > (maxTime / 2);
+        boolean plentyOfTime = timeRemaining > (timeManager.hardNanos() / 2);
 
         int conditionsMet = 0;
         if (shallowDepth) conditionsMet++;
@@ -439,55 +1030,540 @@ public class AIPlayer {
         return String.format("%.2f %s", mem, categories[category]);
     }
 
-    private long computeZobristHash(Board b) {
-        long hash = EMPTY_ZOBRIST;
-        for (int pos = 0; pos < Coordinate.NCubed; pos++) {
-            if (Bit.isSet(b.xPositions, pos)) {
-                hash ^= ZOBRIST_TABLE[pos][0];
-            } else if (Bit.isSet(b.oPositions, pos)) {
-                hash ^= ZOBRIST_TABLE[pos][1];
+    /**
+     * Searches every root move at the given depth and collects the scores. With PVS
+     * the first move gets the full window and later moves are scouted with a null
+     * window, re-searching only the ones that beat the current best. Scouted moves
+     * that fail low are marked inexact, since their score is only an upper bound.
+     */
+    private void searchRoot(SearchWorker w, List < Integer > moves, int depth, long alpha, long beta,
+                            List < MoveEvaluation > results) {
+        Position root = w.board;
+        boolean first = true;
+        for (int mv: moves) {
+            if (shouldStop(w)) {
+                return;
+            }
+            root.makeMove(mv, aiPlayer);
+            long val;
+            if (!config.PVS) {
+                // plain alpha-beta: every root child gets the full root window
+                val = -negamax(w, depth - 1, -beta, -alpha, opponent, aiPlayer, 1);
+            } else if (first) {
+                val = -negamax(w, depth - 1, -beta, -alpha, opponent, aiPlayer, 1);
+            } else {
+                val = -negamax(w, depth - 1, -alpha - 1, -alpha, opponent, aiPlayer, 1);
+                if (val > alpha && val < beta && !w.stopped) {
+                    val = -negamax(w, depth - 1, -beta, -alpha, opponent, aiPlayer, 1);
+                }
+            }
+            root.undoMove(mv);
+
+            if (w.stopped) {
+                return;
+            }
+            results.add(new MoveEvaluation(mv, val, !config.PVS || first || val > alpha));
+            first = false;
+
+            if (config.PVS) {
+                alpha = Math.max(alpha, val);
+                if (alpha >= beta) {
+                    return; // fail high, the aspiration loop widens the window
+                }
+            }
+        }
+    }
+
+    /**
+     * Root search that keeps k exact scores: the first k moves get the full window,
+     * each later one a null-window scout against the k-th best exact score so far,
+     * and a full-window search only if it beats it. Moves that fail the scout are
+     * marked inexact.
+     */
+    private void searchRootMultiPv(SearchWorker w, List < Integer > moves, int depth, int k,
+                                   List < MoveEvaluation > results) {
+        Position root = w.board;
+        long[] top = new long[k]; // exact scores, best first
+        int found = 0;
+        for (int mv: moves) {
+            if (shouldStop(w)) {
+                return;
+            }
+            root.makeMove(mv, aiPlayer);
+            long val;
+            boolean exact = true;
+            if (found < k) {
+                val = -negamax(w, depth - 1, -SCORE_INFINITY, SCORE_INFINITY, opponent, aiPlayer, 1);
+            } else {
+                long alpha = top[k - 1];
+                val = -negamax(w, depth - 1, -alpha - 1, -alpha, opponent, aiPlayer, 1);
+                exact = false;
+                if (val > alpha && !w.stopped) {
+                    val = -negamax(w, depth - 1, -SCORE_INFINITY, SCORE_INFINITY, opponent, aiPlayer, 1);
+                    exact = true;
+                }
+            }
+            root.undoMove(mv);
+
+            if (w.stopped) {
+                return;
+            }
+            results.add(new MoveEvaluation(mv, val, exact));
+            if (exact) {
+                int i = Math.min(found, k - 1);
+                while (i > 0 && top[i - 1] < val) {
+                    top[i] = top[i - 1];
+                    i--;
+                }
+                top[i] = val;
+                found = Math.min(k, found + 1);
+            }
+        }
+    }
+
+    /**
+     * The line after a root move as far as the transposition table still has best
+     * moves for it, up to depth moves in all.
+     */
+    private int[] principalVariation(Position root, int move, int depth) {
+        Position p = root.copy();
+        int[] pv = new int[depth];
+        int length = 0;
+        Player toMove = aiPlayer;
+        int mv = move;
+        while (true) {
+            p.makeMove(mv, toMove);
+            pv[length++] = mv;
+            if (length == depth || p.hasWon(toMove) || p.isFull()) {
+                break;
+            }
+            toMove = toMove.other();
+            int sym = (config.SYMMETRY && p.hasSymmetryHashes()) ? Symmetry.canonical(p.symmetryHashes()) : -1;
+            long entry = transpositionTable.probe((sym >= 0) ? p.symmetryHashes()[sym] : p.hash());
+            mv = (entry != 0) ? TranspositionTable.move(entry) : -1;
+            if (sym >= 0 && mv >= 0) {
+                mv = Symmetry.transformCell(Symmetry.inverse(sym), mv);
+            }
+            if (mv < 0 || p.get(mv) != null) {
+                break;
+            }
+        }
+        return Arrays.copyOf(pv, length);
+    }
+
+    private void searchRootParallel(Position root, List < Integer > moves, int depth, long alpha, long beta,
+                                    List < MoveEvaluation > results) {
+        if (DEBUG) {
+            System.out.println("[DEBUG] Depth " + depth + " - Running moves in parallel.");
+        }
+
+        AtomicLong sharedAlpha = new AtomicLong(alpha);
+        List < MinimaxTask > tasks = new ArrayList < > ();
+        for (int mv: moves) {
+            if (System.nanoTime() >= endTime) {
+                timeUp = true;
+                break;
+            }
+            tasks.add(new MinimaxTask(root, mv, depth, tasks.isEmpty(), sharedAlpha, beta, aiPlayer, endTime, this));
+        }
+
+        // the eldest move runs first so its score can bound the scouts of its siblings
+        currentSearch.invoke(ForkJoinTask.adapt(() -> {
+            if (!tasks.isEmpty()) {
+                tasks.get(0).fork().join();
+            }
+            for (int i = 1; i < tasks.size(); i++) {
+                tasks.get(i).fork();
+            }
+
+            for (MinimaxTask t: tasks) {
+                MoveEvaluation res = t.join();
+                if (res != null) {
+                    results.add(res);
+                }
+            }
+        }));
+    }
+
+    /**
+     * YBWC root: the eldest move is searched serially on the pool to establish a
+     * bound, then the younger moves are split across the pool. Root scouts test
+     * for score >= alpha rather than > alpha, so tied moves are searched exactly
+     * and the move-order tie-break gives the same answer on every run.
+     */
+    private void searchRootYbwc(SearchWorker w, List < Integer > moves, int depth, long alpha, long beta,
+                                List < MoveEvaluation > results) {
+        currentSearch.invoke(ForkJoinTask.adapt(() -> {
+            Position root = w.board;
+            int eldest = moves.get(0);
+            root.makeMove(eldest, aiPlayer);
+            long val = -negamax(w, depth - 1, -beta, -alpha, opponent, aiPlayer, 1);
+            root.undoMove(eldest);
+            if (w.stopped) {
+                return;
+            }
+            results.add(new MoveEvaluation(eldest, val));
+            if (val >= beta || moves.size() == 1) {
+                return;
+            }
+            int[] rootMoves = moves.stream().mapToInt(Integer::intValue).toArray();
+            SplitPoint sp = new SplitPoint(null, Math.max(alpha, val), beta);
+            splitYoungerSiblings(w, sp, rootMoves, 1, rootMoves.length, depth, aiPlayer, 0, results);
+        }));
+    }
+
+    /**
+     * Searches moves[from..count) in parallel below a split point and returns the
+     * best of them, or null if none finished. When results is non-null the per-move
+     * scores are added in move order.
+     */
+    private MoveEvaluation splitYoungerSiblings(SearchWorker w, SplitPoint sp, int[] moves, int from, int count,
+                                                int depth, Player toMove, int ply, List < MoveEvaluation > results) {
+        List < YbwcTask > tasks = new ArrayList < > ();
+        for (int i = from; i < count; i++) {
+            tasks.add(new YbwcTask(this, sp, w, moves[i], depth, toMove, ply, results != null));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        MoveEvaluation best = null;
+        for (YbwcTask t: tasks) {
+            MoveEvaluation res = t.join();
+            if (res != null) {
+                if (best == null || res.value > best.value) {
+                    best = res;
+                }
+                if (results != null) {
+                    results.add(res);
+                }
+            }
+        }
+        return best;
+    }
+
+    private MoveEvaluation searchYoungerSibling(YbwcTask task) {
+        SplitPoint sp = task.splitPoint;
+        SearchWorker w = new SearchWorker(task.board, false, true, sp, history);
+        w.nullMovePly = task.nullMovePly;
+        w.nullMoveSide = task.nullMoveSide;
+        w.verifying = task.verifying;
+        Player next = task.toMove.other();
+        MoveEvaluation result = null;
+
+        long alpha = sp.alpha.get();
+        long beta = sp.beta;
+        if (alpha < beta && !shouldStop(w)) {
+            w.board.makeMove(task.move, task.toMove);
+            long scoutAlpha = task.root ? alpha - 1 : alpha;
+            long val = -negamax(w, task.depth - 1, -scoutAlpha - 1, -scoutAlpha, next, task.toMove, task.ply + 1);
+            if (val > scoutAlpha && val < beta && !w.stopped) {
+                w.pvsResearches++;
+                val = -negamax(w, task.depth - 1, -beta, -scoutAlpha, next, task.toMove, task.ply + 1);
+            }
+            if (!w.stopped) {
+                sp.alpha.accumulateAndGet(val, Math::max);
+                if (val >= beta) {
+                    sp.aborted = true; // fail high: the remaining siblings are irrelevant
+                    w.ordering.recordCutoff(task.move, task.toMove, task.ply, task.depth, false);
+                }
+                result = new MoveEvaluation(task.move, val, val > scoutAlpha && val < beta);
+            }
+        }
+        collect(w);
+        return result;
+    }
+
+    /**
+     * Orders the root moves by static evaluation, with the previous iteration's best
+     * move first so PVS can scout the rest against it.
+     */
+    private List < Integer > orderRootMoves(Position root) {
+        List < Integer > availMoves = root.getAvailableMoves();
+        Map < Integer, Long > moveScores = new HashMap < > ();
+        for (int mv: availMoves) {
+            root.makeMove(mv, aiPlayer);
+            long eval = evaluate(null, root);
+            moveScores.put(mv, eval);
+            root.undoMove(mv);
+        }
+        availMoves.sort((m1, m2) -> Long.compare(moveScores.get(m2), moveScores.get(m1)));
+        if (lastBestMove != -1 && availMoves.remove((Integer) lastBestMove)) {
+            availMoves.add(0, lastBestMove);
+        }
+        if (config.SYMMETRY && root.hasSymmetryHashes()) {
+            availMoves = dedupeSymmetricMoves(root, availMoves);
+        }
+        return availMoves;
+    }
+
+    /**
+     * Keeps one move of each set of moves that are symmetric in the root position,
+     * the best-ordered one. Root symmetries are checked on the boards, not the keys.
+     */
+    private List < Integer > dedupeSymmetricMoves(Position root, List < Integer > availMoves) {
+        int[] stabilizer = new int[Symmetry.COUNT];
+        int stabilizerCount = Symmetry.stabilizer(root.xPositions, root.oPositions, stabilizer);
+        int[] moves = new int[availMoves.size()];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = availMoves.get(i);
+        }
+        int unique = Symmetry.dedupe(moves, moves.length, stabilizer, stabilizerCount);
+        symmetryPrunes.addAndGet(moves.length - unique);
+        List < Integer > result = new ArrayList < > (unique);
+        for (int i = 0; i < unique; i++) {
+            result.add(moves[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Lazy SMP: starts up to SEARCH_THREADS - 1 helpers, as many as the executor's
+     * fair share allows, that run their own iterative deepening on the same root.
+     * They only talk to the main thread through the shared transposition table, and
+     * their results are never reported directly.
+     */
+    private List < Future < ? >> startHelpers(EngineExecutor.Search search, Position root) {
+        helpersStop = false;
+        List < Future < ? >> helpers = new ArrayList < > ();
+        int slots = search.helperSlots(config.SEARCH_THREADS - 1);
+        for (int id = 1; id <= slots; id++) {
+            final int helperId = id;
+            final Position helperBoard = root.copy();
+            helpers.add(search.startHelper(() -> runHelper(helperId, helperBoard)));
+        }
+        return helpers;
+    }
+
+    private void runHelper(int id, Position root) {
+        SearchWorker w = new SearchWorker(root, true, history);
+        List < Integer > moves = orderRootMoves(root);
+        // stagger the start depth and rotate the move order so helpers spread out
+        // over different parts of the tree instead of repeating the main thread
+        if (!moves.isEmpty()) {
+            Collections.rotate(moves, -((id / 2) % moves.size()));
+        }
+        List < MoveEvaluation > results = new ArrayList < > ();
+        for (int depth = 1 + (id % 2); depth <= maxDepth && !shouldStop(w); depth++) {
+            results.clear();
+            searchRoot(w, moves, depth, -SCORE_INFINITY, SCORE_INFINITY, results);
+            if (!w.stopped) {
+                helperDepth.accumulateAndGet(depth, Math::max);
+            }
+        }
+        helperNodes.addAndGet(w.nodes);
+        collect(w);
+    }
+
+    private void stopHelpers(List < Future < ? >> helpers) {
+        helpersStop = true;
+        for (Future < ? > f: helpers) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Lazy SMP helper failed", e.getCause());
             }
         }
-        return hash;
     }
 
-    private long minimax(Board b, int depth, long alpha, long beta, boolean maxPlayer, Player lastP, int origMaxDepth) {
-        if (System.nanoTime() >= endTime) {
+    private boolean shouldStop(SearchWorker w) {
+        if (w.stopped) {
+            return true;
+        }
+        if (timeUp || (w.helper && helpersStop) || (w.splitPoint != null && w.splitPoint.isAborted())) {
+            w.stopped = true;
+        } else if (System.nanoTime() >= endTime || currentSearch.isCancelled() ||
+                (config.NODE_LIMIT > 0 && nodeCount.get() + w.nodes >= config.NODE_LIMIT)) {
             timeUp = true;
-            return 0; // Neutral if time is up
+            w.stopped = true;
+        }
+        return w.stopped;
+    }
+
+    /**
+     * Threat quiescence below the full-width horizon. An own open three wins and two
+     * opposing ones lose; a single opposing one must be blocked, so the block is the
+     * only move and there is no stand-pat. Otherwise the side to move may stand pat
+     * on the static evaluation or play a move that makes two open threes at once.
+     * Wins found here score exactly WIN_SCORE. Each leaf gets QUIESCENCE_NODES nodes,
+     * after which the static evaluation is returned.
+     */
+    private long quiesce(SearchWorker w, long alpha, long beta, Player toMove) {
+        w.nodes++;
+        w.quiescenceNodes++;
+        Position b = w.board;
+        w.treeHash = Long.rotateLeft(w.treeHash, 7) ^ b.hash();
+        long own = (toMove == Player.X) ? b.xPositions : b.oPositions;
+        long opp = (toMove == Player.X) ? b.oPositions : b.xPositions;
+        long occupied = own | opp;
+        Player next = toMove.other();
+        // the open-line totals say whether there is a three at all before the scan
+        if (b.openLines(toMove, 3) != 0) {
+            return WIN_SCORE;
+        }
+        long blocks = (b.openLines(next, 3) != 0) ? MoveOrdering.threatCells(opp, occupied) : 0;
+        if (Long.bitCount(blocks) >= 2) {
+            return -WIN_SCORE;
+        }
+
+        long standPat = evaluate(w, b);
+        standPat = (toMove == aiPlayer) ? standPat : -standPat;
+        if (--w.quiescenceBudget <= 0 || b.isFull()) {
+            return standPat;
+        }
+        if (blocks != 0) {
+            int mv = Long.numberOfTrailingZeros(blocks);
+            b.makeMove(mv, toMove);
+            long val = -quiesce(w, -beta, -alpha, next);
+            b.undoMove(mv);
+            return val;
+        }
+
+        if (standPat >= beta) {
+            return standPat;
         }
+        alpha = Math.max(alpha, standPat);
+        long best = standPat;
+        for (long bits = ThreatSearch.threatMoves(own, opp); bits != 0; bits &= bits - 1) {
+            int mv = Long.numberOfTrailingZeros(bits);
+            long mask = 1L << mv;
+            if (Long.bitCount(MoveOrdering.threatCells(own | mask, occupied | mask)) < 2) {
+                continue;
+            }
+            b.makeMove(mv, toMove);
+            long val = -quiesce(w, -beta, -alpha, next);
+            b.undoMove(mv);
+            if (val > best) {
+                best = val;
+                if (val > alpha) {
+                    alpha = val;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private void collect(SearchWorker w) {
+        nodeCount.addAndGet(w.nodes);
+        transpositionHits.addAndGet(w.ttHits);
+        transpositionMisses.addAndGet(w.ttMisses);
+        pvsResearches.addAndGet(w.pvsResearches);
+        symmetryPrunes.addAndGet(w.symmetryPrunes);
+        quiescenceNodes.addAndGet(w.quiescenceNodes);
+        nullMoveTries.addAndGet(w.nullMoveTries);
+        nullMoveCutoffs.addAndGet(w.nullMoveCutoffs);
+        nullMoveVerifyFails.addAndGet(w.nullMoveVerifyFails);
+        lmrReductions.addAndGet(w.lmrReductions);
+        lmrResearches.addAndGet(w.lmrResearches);
+        futilityPrunes.addAndGet(w.futilityPrunes);
+        evaluations.addAndGet(w.evaluations);
+        evalCacheHits.addAndGet(w.evalCacheHits);
+        treeHash.getAndAccumulate(w.treeHash, (a, b) -> a ^ b);
+        betaCutoffs.addAndGet(w.ordering.cutoffs);
+        firstMoveCutoffs.addAndGet(w.ordering.firstMoveCutoffs);
+        w.ordering.cutoffs = 0;
+        w.ordering.firstMoveCutoffs = 0;
+        w.nodes = 0;
+        w.ttHits = 0;
+        w.ttMisses = 0;
+        w.pvsResearches = 0;
+        w.symmetryPrunes = 0;
+        w.quiescenceNodes = 0;
+        w.nullMoveTries = 0;
+        w.nullMoveCutoffs = 0;
+        w.nullMoveVerifyFails = 0;
+        w.lmrReductions = 0;
+        w.lmrResearches = 0;
+        w.futilityPrunes = 0;
+        w.evaluations = 0;
+        w.evalCacheHits = 0;
+        w.treeHash = 0;
+    }
 
-        long zHash = computeZobristHash(b);
-        TranspositionEntry entry = transpositionTable.get(zHash);
-        if (entry != null && entry.depth >= depth) {
-            transpositionHits.incrementAndGet();
-            if (entry.flag == 0) {
-                return entry.value;
-            } else if (entry.flag == 1) {
-                alpha = Math.max(alpha, entry.value);
-            } else if (entry.flag == 2) {
-                beta = Math.min(beta, entry.value);
+    /**
+     * Fingerprint of a search: node count, best move, score and the keys of all
+     * nodes visited in order. Two deterministic searches agree on it only if they
+     * searched the same tree, so a change that should not alter the search can be
+     * checked with it.
+     */
+    private static long checksum(long nodes, int move, long score, long tree) {
+        long h = tree;
+        h = h * 31 + nodes;
+        h = h * 31 + move;
+        h = h * 31 + score;
+        // murmur3 finalizer
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Negamax alpha-beta with principal variation search. Scores are from the point
+     * of view of the side to move, so a child's score is negated on the way up.
+     *
+     * @param w      The calling thread's worker, holding the position and counters.
+     * @param depth  Remaining depth.
+     * @param toMove The side to move in this position.
+     * @param lastP  The side that made the previous move.
+     * @param ply    Distance from the root, used for killer moves.
+     */
+    private long negamax(SearchWorker w, int depth, long alpha, long beta, Player toMove, Player lastP, int ply) {
+        if (shouldStop(w)) {
+            return 0; // Neutral if time is up
+        }
+        w.nodes++;
+        Position b = w.board;
+
+        long alphaOrig = alpha;
+        // while the position is small enough, symmetric copies share the canonical key
+        int sym = (config.SYMMETRY && b.hasSymmetryHashes()) ? Symmetry.canonical(b.symmetryHashes()) : -1;
+        long zHash = (sym >= 0) ? b.symmetryHashes()[sym] : b.hash();
+        if (w.nullMoveSide) {
+            zHash ^= NULL_MOVE_KEY;
+        }
+        w.treeHash = Long.rotateLeft(w.treeHash, 7) ^ zHash;
+        long entry = transpositionTable.probe(zHash);
+        // YBWC only trusts same-depth entries so its scores do not depend on thread timing
+        if (entry != 0 && (w.ybwc ? TranspositionTable.depth(entry) == depth : TranspositionTable.depth(entry) >= depth)) {
+            w.ttHits++;
+            long entryValue = TranspositionTable.value(entry);
+            int bound = TranspositionTable.bound(entry);
+            if (bound == TranspositionTable.EXACT) {
+                return entryValue;
+            } else if (bound == TranspositionTable.LOWER) {
+                alpha = Math.max(alpha, entryValue);
+            } else if (bound == TranspositionTable.UPPER) {
+                beta = Math.min(beta, entryValue);
             }
             if (alpha >= beta) {
-                return entry.value;
+                return entryValue;
             }
         } else {
-            transpositionMisses.incrementAndGet();
-            nodeCount.incrementAndGet();
+            w.ttMisses++;
         }
 
-        Player currentP = maxPlayer ? aiPlayer : opponent;
-
         if (depth == 0 || isTerminal(b, lastP)) {
             long eval;
+            int bound = TranspositionTable.EXACT;
             if (checkWinner(b, lastP)) {
-                int winScore = 1_000_000 + depth;
-                eval = (lastP == aiPlayer) ? winScore : -winScore;
+                // the previous move won, so the side to move has lost
+                eval = -(WIN_SCORE + depth);
+            } else if (config.QUIESCENCE && !b.isFull()) {
+                w.quiescenceBudget = config.QUIESCENCE_NODES;
+                eval = quiesce(w, alpha, beta, toMove);
+                bound = (eval <= alphaOrig) ? TranspositionTable.UPPER :
+                        (eval >= beta) ? TranspositionTable.LOWER : TranspositionTable.EXACT;
             } else {
-                eval = Heuristic.evaluate(b, aiPlayer, weights);
+                eval = evaluate(w, b);
+                eval = (toMove == aiPlayer) ? eval : -eval;
             }
-            int fType = (eval <= alpha) ? 2 : (eval >= beta) ? 1 : 0;
-            transpositionTable.put(zHash, new TranspositionEntry(eval, depth, fType));
+            transpositionTable.store(zHash, eval, depth, bound, -1);
 
             if (DEBUG) {
                 System.out.println("[DEBUG] Terminal node at depth " + depth + " eval: " + eval);
@@ -496,92 +1572,223 @@ public class AIPlayer {
             return eval;
         }
 
-        List < Integer > availMoves = b.getAvailableMoves();
-
-        Map < Integer, Long > moveScores = new HashMap < > ();
-        for (int mv: availMoves) {
-            b.makeMove(mv, currentP);
-            long eval = Heuristic.evaluate(b, aiPlayer, weights);
-            moveScores.put(mv, eval);
-            b.undoMove(mv);
+        // selective search only at null-window nodes without open threes on the board
+        boolean pvNode = beta - alpha > 1;
+        long own = (toMove == Player.X) ? b.xPositions : b.oPositions;
+        long opp = (toMove == Player.X) ? b.oPositions : b.xPositions;
+        boolean quietNode = !pvNode && ply > 0 && Math.abs(alpha) < WIN_SCORE / 2 && Math.abs(beta) < WIN_SCORE / 2 &&
+                (config.NULL_MOVE || config.FUTILITY || config.LMR) &&
+                b.openLines(toMove, 3) == 0 && b.openLines(toMove.other(), 3) == 0;
+        long staticEval = 0;
+        if (quietNode && ((config.NULL_MOVE && depth >= NULL_MOVE_MIN_DEPTH) ||
+                (config.FUTILITY && depth <= config.FUTILITY_DEPTH))) {
+            staticEval = evaluate(w, b);
+            staticEval = (toMove == aiPlayer) ? staticEval : -staticEval;
         }
 
-        if (maxPlayer) {
-            availMoves.sort((m1, m2) -> Long.compare(moveScores.get(m2), moveScores.get(m1)));
-        } else {
-            availMoves.sort(Comparator.comparingLong(moveScores::get));
+        if (quietNode && config.NULL_MOVE && depth >= NULL_MOVE_MIN_DEPTH && staticEval >= beta &&
+                w.verifying == 0 && w.nullMovePly != ply - 1) {
+            long nullEval = nullMoveSearch(w, depth, beta, toMove, lastP, ply);
+            if (w.stopped) {
+                return 0;
+            }
+            if (nullEval >= beta) {
+                return nullEval;
+            }
+        }
+        boolean futile = quietNode && config.FUTILITY && depth <= config.FUTILITY_DEPTH &&
+                staticEval + futilityMargin * depth <= alpha;
+
+        int[] moves = w.moves(ply);
+        int[] scores = w.scores(ply);
+        int ttMove = (entry != 0) ? TranspositionTable.move(entry) : -1;
+        if (sym >= 0 && ttMove >= 0) {
+            // stored in the canonical frame
+            ttMove = Symmetry.transformCell(Symmetry.inverse(sym), ttMove);
+        }
+        int count = w.ordering.order(b, toMove, ttMove, ply, moves, scores);
+        if (sym >= 0) {
+            int stabilizerCount = Symmetry.stabilizer(b.symmetryHashes(), w.stabilizer);
+            int unique = Symmetry.dedupe(moves, count, w.stabilizer, stabilizerCount);
+            w.symmetryPrunes += count - unique;
+            count = unique;
         }
 
-        if (maxPlayer) {
-            long maxEval = Long.MIN_VALUE;
-            for (int mv: availMoves) {
-                if (System.nanoTime() >= endTime) {
-                    timeUp = true;
+        Player next = toMove.other();
+        long bestEval = -SCORE_INFINITY;
+        int bestMove = -1;
+        int goodHistory = (quietNode && config.LMR) ? w.ordering.maxHistory(toMove) / 2 : 0;
+        for (int i = 0; i < count; i++) {
+            int mv = moves[i];
+            boolean quietMove = quietNode && MoveOrdering.isQuiet(scores[i]) && !makesThree(own, opp, mv);
+            if (futile && quietMove && i > 0) {
+                // even a generous margin cannot lift this move above alpha
+                w.futilityPrunes++;
+                bestEval = Math.max(bestEval, staticEval + futilityMargin * depth);
+                continue;
+            }
+            if (i > 0 && w.ybwc && depth >= config.YBWC_MIN_SPLIT_DEPTH) {
+                // young brothers wait: the eldest child has set a bound, split the rest
+                SplitPoint sp = new SplitPoint(w.splitPoint, alpha, beta);
+                MoveEvaluation younger = splitYoungerSiblings(w, sp, moves, i, count, depth, toMove, ply, null);
+                if (shouldStop(w)) {
                     break;
                 }
-                b.makeMove(mv, currentP);
-                long eval = minimax(b, depth - 1, alpha, beta, false, currentP, origMaxDepth);
-                b.undoMove(mv);
-                maxEval = Math.max(maxEval, eval);
-                alpha = Math.max(alpha, eval);
-                if (beta <= alpha || timeUp) {
-                    break;
+                if (younger != null && younger.value > bestEval) {
+                    bestEval = younger.value;
+                    bestMove = younger.move;
                 }
+                break;
             }
-            int fType = (maxEval >= beta) ? 1 : 0;
-            transpositionTable.put(zHash, new TranspositionEntry(maxEval, depth, fType));
-
-            if (DEBUG) {
-                System.out.println("[DEBUG] Max node at depth " + depth + " best eval: " + maxEval);
+            b.makeMove(mv, toMove);
+            long eval;
+            int reduction = 0;
+            if (quietMove && config.LMR && i >= config.LMR_MIN_MOVE && depth >= config.LMR_MIN_DEPTH) {
+                // late quiet moves get less depth, the latest ones more so, unless
+                // their history says they often cut off
+                reduction = (i >= 2 * config.LMR_MIN_MOVE && depth >= config.LMR_MIN_DEPTH + 2) ? 2 : 1;
+                if (goodHistory > 0 && w.ordering.history(toMove, mv) >= goodHistory) {
+                    reduction--;
+                }
             }
-            return maxEval;
-        } else {
-            long minEval = Long.MAX_VALUE;
-            for (int mv: availMoves) {
-                if (System.nanoTime() >= endTime) {
-                    timeUp = true;
-                    break;
+            if (reduction > 0) {
+                w.lmrReductions++;
+                eval = -negamax(w, depth - 1 - reduction, -alpha - 1, -alpha, next, toMove, ply + 1);
+                if (eval > alpha && !w.stopped) {
+                    w.lmrResearches++;
+                    eval = -negamax(w, depth - 1, -beta, -alpha, next, toMove, ply + 1);
                 }
-                b.makeMove(mv, currentP);
-                long eval = minimax(b, depth - 1, alpha, beta, true, currentP, origMaxDepth);
-                b.undoMove(mv);
-                minEval = Math.min(minEval, eval);
-                beta = Math.min(beta, eval);
-                if (beta <= alpha || timeUp) {
-                    break;
+            } else if (i == 0 || !config.PVS) {
+                eval = -negamax(w, depth - 1, -beta, -alpha, next, toMove, ply + 1);
+            } else {
+                eval = -negamax(w, depth - 1, -alpha - 1, -alpha, next, toMove, ply + 1);
+                if (eval > alpha && eval < beta && !w.stopped) {
+                    w.pvsResearches++;
+                    eval = -negamax(w, depth - 1, -beta, -alpha, next, toMove, ply + 1);
                 }
             }
-            int fType = (minEval <= alpha) ? 2 : 0;
-            transpositionTable.put(zHash, new TranspositionEntry(minEval, depth, fType));
+            b.undoMove(mv);
 
-            if (DEBUG) {
-                System.out.println("[DEBUG] Min node at depth " + depth + " best eval: " + minEval);
+            if (w.stopped) {
+                break;
+            }
+            if (eval > bestEval) {
+                bestEval = eval;
+                bestMove = mv;
+            }
+            alpha = Math.max(alpha, eval);
+            if (alpha >= beta) {
+                w.ordering.recordCutoff(mv, toMove, ply, depth, i == 0);
+                break;
+            }
+        }
+
+        if (!w.stopped) {
+            int fType = (bestEval <= alphaOrig) ? TranspositionTable.UPPER :
+                    (bestEval >= beta) ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+            int storedMove = (sym >= 0 && bestMove >= 0) ? Symmetry.transformCell(sym, bestMove) : bestMove;
+            transpositionTable.store(zHash, bestEval, depth, fType, storedMove);
+        }
+
+        if (DEBUG) {
+            System.out.println("[DEBUG] Node at depth " + depth + " best eval: " + bestEval);
+        }
+        return bestEval;
+    }
+
+    /**
+     * Lets the opponent move twice in a row at reduced depth. Passing never helps in
+     * this game, so if that still fails high the real moves will too. With
+     * NULL_MOVE_VERIFY the cutoff is only taken after a reduced search of the real
+     * moves, with null moves off below it, agrees. Returns the score to cut off
+     * with, or something below beta.
+     */
+    private long nullMoveSearch(SearchWorker w, int depth, long beta, Player toMove, Player lastP, int ply) {
+        w.nullMoveTries++;
+        int reduction = config.NULL_MOVE_REDUCTION + (depth > 6 ? 1 : 0);
+        int savedPly = w.nullMovePly;
+        w.nullMovePly = ply;
+        w.nullMoveSide = !w.nullMoveSide;
+        long eval = -negamax(w, Math.max(0, depth - 1 - reduction), -beta, -beta + 1, toMove.other(), toMove, ply + 1);
+        w.nullMoveSide = !w.nullMoveSide;
+        w.nullMovePly = savedPly;
+        if (w.stopped || eval < beta) {
+            return eval;
+        }
+        if (config.NULL_MOVE_VERIFY) {
+            w.verifying++;
+            long verified = negamax(w, Math.max(1, depth - reduction), beta - 1, beta, toMove, lastP, ply);
+            w.verifying--;
+            if (w.stopped) {
+                return verified;
+            }
+            if (verified < beta) {
+                w.nullMoveVerifyFails++;
+                return verified;
             }
-            return minEval;
         }
+        w.nullMoveCutoffs++;
+        // a win found after passing proves nothing about the real position
+        return eval >= WIN_SCORE / 2 ? beta : eval;
     }
 
-    private boolean isTerminal(Board b, Player lastP) {
-        return checkWinner(b, lastP) || b.isFull();
+    /**
+     * Heuristic.evaluate() for aiPlayer, through the eval cache. The score depends
+     * only on the pieces, so the plain Zobrist key is the cache key. Counts go to
+     * the worker, or straight to the totals for root ordering (w == null).
+     */
+    private long evaluate(SearchWorker w, Position b) {
+        long key = b.hash();
+        if (evalCache != null) {
+            long cached = evalCache.probe(key);
+            if (cached != EvalCache.MISS) {
+                if (w != null) {
+                    w.evalCacheHits++;
+                } else {
+                    evalCacheHits.incrementAndGet();
+                }
+                return cached;
+            }
+        }
+        long eval = Heuristic.evaluate(b, aiPlayer, weights);
+        if (evalCache != null) {
+            evalCache.store(key, eval);
+        }
+        if (w != null) {
+            w.evaluations++;
+        } else {
+            evaluations.incrementAndGet();
+        }
+        return eval;
     }
 
-    private boolean checkWinner(Board b, Player p) {
-        long pPositions = (p == Player.X) ? b.xPositions : b.oPositions;
-        for (Line line: Line.lines) {
-            if ((pPositions & line.positions()) == line.positions()) {
+    private static boolean makesThree(long own, long opp, int move) {
+        for (long line : Geometry.CELL_LINES[move]) {
+            if ((line & opp) == 0 && Long.bitCount(line & own) == 2) {
                 return true;
             }
         }
         return false;
     }
 
+    private boolean isTerminal(Position b, Player lastP) {
+        return checkWinner(b, lastP) || b.isFull();
+    }
+
+    /**
+     * Only lastP's move can have won, and the Position counts complete lines as it
+     * goes, so this is a lookup rather than a line scan.
+     */
+    private boolean checkWinner(Position b, Player lastP) {
+        return b.hasWon(lastP);
+    }
+
     private int findImmediateWinMove(Board b, Player p) {
         long pPositions = (p == Player.X) ? b.xPositions : b.oPositions;
         long oPositions = (p == Player.X) ? b.oPositions : b.xPositions;
         long occupied = pPositions | oPositions;
 
-        for (Line line: Line.lines) {
-            long linePos = line.positions();
+        for (long linePos : Geometry.LINES) {
             long pLinePos = linePos & pPositions;
             long emptyLinePos = linePos & ~occupied;
 
@@ -601,30 +1808,55 @@ public class AIPlayer {
     }
 
     /**
-     * Starts a progress bar thread that shows time usage if not in debug mode.
+     * Shows time usage on the executor's timer thread while the search runs, if in
+     * time mode and not in debug mode.
      */
-    private Thread getProgressBarThread() {
-        Thread t = new Thread(() -> {
-            boolean isTimeMode = !(maxTime > MAX_TIME);
-            long startTime = System.nanoTime();
-            while (!timeUp && System.nanoTime() < endTime) {
+    private void startProgressBar(EngineExecutor.Search search) {
+        if (!timeManager.isLimited() || DEBUG) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        search.every(45, () -> {
+            if (!timeUp && System.nanoTime() < endTime) {
                 long elapsed = System.nanoTime() - startTime;
-                int progress = (int)((elapsed * 100) / maxTime);
-                if (isTimeMode && !DEBUG) {
-                    System.out.print("\rProgress: " + progress + "%");
-                }
-                try {
-                    Thread.sleep(45);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+                int progress = (int)((elapsed * 100) / timeManager.hardNanos());
+                System.out.print("\rProgress: " + progress + "%");
             }
-            if (isTimeMode && !DEBUG) {
-                System.out.print("\rProgress: 100%\n");
-            }
-        });
-        t.start();
-        return t;
+        }, () -> System.out.print("\rProgress: 100%\n"));
+    }
+
+    public long getHelperNodeCount() {
+        return helperNodes.get();
+    }
+
+    public long getNodeCount() {
+        return nodeCount.get();
+    }
+
+    /**
+     * Calls to Heuristic.evaluate in the last search, cache hits not included.
+     */
+    public long getEvaluationCount() {
+        return evaluations.get();
+    }
+
+    public long getEvalCacheHits() {
+        return evalCacheHits.get();
+    }
+
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    public long getLastScore() {
+        return lastScore;
+    }
+
+    /**
+     * See checksum(); only reproducible with DETERMINISTIC set.
+     */
+    public long getSearchChecksum() {
+        return searchChecksum;
     }
 
     public String stats() {
@@ -639,10 +1871,61 @@ public class AIPlayer {
         statsMap.put("lastDepth", lastDepth);
         statsMap.put("transpositionHits", transpositionHits.get());
         statsMap.put("transpositionMisses", transpositionMisses.get());
-        statsMap.put("transpositionTableSize", transpositionTable.size());
+        long probes = transpositionHits.get() + transpositionMisses.get();
+        double hitRate = probes > 0 ? (double) transpositionHits.get() / probes : 0.0;
+        statsMap.put("transpositionHitRate", hitRate);
+        statsMap.put("transpositionOccupancy", transpositionTable.occupancy());
+        statsMap.put("transpositionTableSize", transpositionTable.capacity());
+        statsMap.put("transpositionTableMemory", formatMemory(transpositionTable.sizeBytes()));
+        long evalProbes = evaluations.get() + evalCacheHits.get();
+        statsMap.put("evaluations", evaluations.get());
+        statsMap.put("evalCacheHits", evalCacheHits.get());
+        statsMap.put("evalCacheMisses", evalCache != null ? evaluations.get() : 0);
+        statsMap.put("evalCacheHitRate", evalProbes > 0 ? (double) evalCacheHits.get() / evalProbes : 0.0);
+        statsMap.put("evalCacheMemory", formatMemory(evalCache != null ? evalCache.sizeBytes() : 0));
+        statsMap.put("pvsResearches", pvsResearches.get());
+        statsMap.put("symmetryPrunedMoves", symmetryPrunes.get());
+        statsMap.put("quiescenceNodes", quiescenceNodes.get());
+        statsMap.put("nullMoveTries", nullMoveTries.get());
+        statsMap.put("nullMoveCutoffs", nullMoveCutoffs.get());
+        statsMap.put("nullMoveVerifyFails", nullMoveVerifyFails.get());
+        statsMap.put("lmrReductions", lmrReductions.get());
+        statsMap.put("lmrResearches", lmrResearches.get());
+        statsMap.put("futilityPrunes", futilityPrunes.get());
+        statsMap.put("betaCutoffs", betaCutoffs.get());
+        statsMap.put("firstMoveCutoffRate", betaCutoffs.get() > 0 ? (double) firstMoveCutoffs.get() / betaCutoffs.get() : 0.0);
+        statsMap.put("parallelStrategy", config.PARALLEL);
+        statsMap.put("searchThreads", config.PARALLEL == EngineConfig.ParallelStrategy.ROOT_SPLIT ?
+                Runtime.getRuntime().availableProcessors() : config.SEARCH_THREADS);
+        statsMap.put("executorThreads", executor.threads());
+        statsMap.put("activeSearches", executor.activeSearches());
+        statsMap.put("helperNodes", helperNodes.get());
+        statsMap.put("helperDepth", helperDepth.get());
+        statsMap.put("aspirationResearches", aspirationResearches.get());
+        long ponders = ponderHits.get() + ponderMisses.get();
+        statsMap.put("ponderHits", ponderHits.get());
+        statsMap.put("ponderMisses", ponderMisses.get());
+        statsMap.put("ponderHitRate", ponders > 0 ? (double) ponderHits.get() / ponders : 0.0);
+        statsMap.put("ponderTimeSavedMs", ponderNanosSaved.get() / 1_000_000);
+        statsMap.put("bookHits", bookHits.get());
+        statsMap.put("lastMoveFromBook", lastMoveFromBook);
+        statsMap.put("threatSearchNodes", threatNodes.get());
+        statsMap.put("threatWinPlies", threatWinPlies);
+        statsMap.put("opponentThreatPlies", opponentThreatPlies);
+        statsMap.put("threatWarning", threatWarning);
+        statsMap.put("endgameSolves", endgameSolves.get());
+        statsMap.put("endgameNodes", endgameNodes.get());
+        statsMap.put("endgameResult", endgameResult);
         statsMap.put("bestMoveSoFar", bestMoveSoFar);
         statsMap.put("lastBestMove", lastBestMove);
-        statsMap.put("consistentMoveCount", consistentMoveCount);
+        statsMap.put("deterministic", config.DETERMINISTIC);
+        statsMap.put("searchChecksum", Long.toHexString(searchChecksum));
+        statsMap.put("timeTargetMs", timeManager.targetMillis());
+        statsMap.put("timeSoftDeadlineMs", timeManager.softMillis());
+        statsMap.put("timeExtensions", timeManager.extensions());
+        statsMap.put("timeUsedMs", timeManager.lastMoveMillis());
+        statsMap.put("clockRemainingMs", timeManager.remainingMillis());
+        statsMap.put("branchingFactor", timeManager.branchingFactor());
         statsMap.put("memoryUsed", formatMemory(memoryUsed));
         statsMap.put("heapSize", formatMemory(heapSize));
         statsMap.put("totalSearches", searches);
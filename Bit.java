@@ -97,19 +97,7 @@ public class Bit {
      * @return The number of leading zeros.
      */
     public static int countLeadingZeros(long x) {
-        int count = 0;
-        int shift = 32;
-        long y;
-
-        while (shift > 0) {
-            y = x >>> shift;
-            if (y != 0) {
-                count += shift;
-                x = y;
-            }
-            shift >>= 1;
-        }
-        return x == 0 ? 64 : count + Long.numberOfLeadingZeros(x);
+        return Long.numberOfLeadingZeros(x);
     }
 
     /**
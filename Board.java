@@ -55,17 +55,31 @@ public class Board {
         return Bit.countOnes(xPositions | oPositions);
     }
 
+    public long emptyCells() {
+        return ~(xPositions | oPositions);
+    }
+
     public List<Integer> getAvailableMoves() {
-        List<Integer> moves = new ArrayList<>();
-        long occupied = xPositions | oPositions;
-        for (int position = 0; position < 64; position++) {
-            if (!Bit.isSet(occupied, position)) {
-                moves.add(position);
-            }
+        List<Integer> moves = new ArrayList<>(64 - totalMoves());
+        for (long empty = emptyCells(); empty != 0; empty &= empty - 1) {
+            moves.add(Long.numberOfTrailingZeros(empty));
         }
         return moves;
     }
 
+    /**
+     * Writes the empty cells, in increasing order, into moves without allocating.
+     *
+     * @return The number of cells written.
+     */
+    public int getAvailableMoves(int[] moves) {
+        int count = 0;
+        for (long empty = emptyCells(); empty != 0; empty &= empty - 1) {
+            moves[count++] = Long.numberOfTrailingZeros(empty);
+        }
+        return count;
+    }
+
     public boolean isValidMove(int position) {
         long occupied = xPositions | oPositions;
         return !Bit.isSet(occupied, position);
@@ -160,27 +174,42 @@ public class Board {
 
     public boolean hasWon(Player nextPlayer) {
         long positions = (nextPlayer == Player.X) ? xPositions : oPositions;
-        for (Line line : Line.lines) {
-            if ((positions & line.positions()) == line.positions()) {
-                return true;
-            }
-        }
-        return false;
+        return Geometry.hasLine(positions);
     }
 
+    /**
+     * hasWon() when lastMove, played by player, is the only move that can have won:
+     * checks just the lines through it.
+     */
+    public boolean hasWon(Player player, int lastMove) {
+        long positions = (player == Player.X) ? xPositions : oPositions;
+        return Geometry.completesLine(positions, lastMove);
+    }
+
+    /**
+     * @return A uniformly random empty cell.
+     * @throws IllegalStateException If the board is full.
+     */
     public int getRandomEmptyPosition() {
-        List<Integer> availableMoves = getAvailableMoves();
-        int randomIndex = (int) (Math.random() * availableMoves.size());
-        return availableMoves.get(randomIndex);
+        long empty = emptyCells();
+        if (empty == 0) {
+            throw new IllegalStateException("No empty cells on a full board");
+        }
+        for (int skip = (int) (Math.random() * Long.bitCount(empty)); skip > 0; skip--) {
+            empty &= empty - 1;
+        }
+        return Long.numberOfTrailingZeros(empty);
     }
 
     public Line getWinningLine(Player player) {
         long positions = (player == Player.X) ? xPositions : oPositions;
-        for (Line line : Line.lines) {
-            if ((positions & line.positions()) == line.positions()) {
-                return line;
-            }
-        }
-        return null;
+        int line = Geometry.firstLine(positions);
+        return (line >= 0) ? Line.lines[line] : null;
+    }
+
+    public Line getWinningLine(Player player, int lastMove) {
+        long positions = (player == Player.X) ? xPositions : oPositions;
+        int line = Geometry.completedLine(positions, lastMove);
+        return (line >= 0) ? Line.lines[line] : null;
     }
 }
\ No newline at end of file
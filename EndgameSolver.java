@@ -0,0 +1,284 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+/**
+ * Exact solver for positions with few empty cells.
+ *
+ * Plain alpha-beta over the two bitboards, with no evaluator: a position is only
+ * worth WIN, LOSS or a draw, and wins and losses carry the number of plies to the
+ * end so that the solver takes the fastest win and the slowest loss. It allocates
+ * nothing while searching. Only the lines through the last move are checked for
+ * a win, open threes are answered (or converted) immediately, and a position where
+ * neither side has a line left free of the other's pieces is a draw without
+ * searching further. Solved positions go into a small cache of its own, separate
+ * from the main search's transposition table.
+ *
+ * Instances are not thread safe.
+ */
+public class EndgameSolver {
+    public static final int WIN = 10_000;
+
+    private static final int MAX_PLY = Coordinate.NCubed + 1;
+    private static final int EXACT = 0;
+    private static final int LOWER = 1;
+    private static final int UPPER = 2;
+    private static final int TIME_CHECK_INTERVAL = 1 << 14;
+
+    public static class Result {
+        public final int move;
+        public final int score;
+        public final long nodes;
+        public final long micros;
+
+        Result(int move, int score, long nodes, long micros) {
+            this.move = move;
+            this.score = score;
+            this.nodes = nodes;
+            this.micros = micros;
+        }
+
+        /**
+         * Plies until the game is decided, counting the move to play; 0 for a draw.
+         */
+        public int distance() {
+            return score == 0 ? 0 : WIN - Math.abs(score);
+        }
+
+        @Override
+        public String toString() {
+            String outcome = score > 0 ? "WIN in " + distance() : score < 0 ? "LOSS in " + distance() : "DRAW";
+            return outcome + " (move " + move + ", " + nodes + " nodes, " + micros + " us)";
+        }
+    }
+
+    private final long[] cacheKeys;
+    private final int[] cacheData;
+    private final int cacheMask;
+    private final int[][] moveStack = new int[MAX_PLY][Coordinate.NCubed];
+    private final int[][] scoreStack = new int[MAX_PLY][Coordinate.NCubed];
+    private long nodes;
+    private long nodeLimit;
+    private long deadline;
+    private boolean aborted;
+
+    public EndgameSolver() {
+        this(18);
+    }
+
+    /**
+     * @param cacheBits log2 of the number of cache entries (12 bytes each).
+     */
+    public EndgameSolver(int cacheBits) {
+        cacheKeys = new long[1 << cacheBits];
+        cacheData = new int[1 << cacheBits];
+        cacheMask = (1 << cacheBits) - 1;
+    }
+
+    /**
+     * Solves the position for the side to move.
+     *
+     * @param nodeLimit Give up after this many nodes.
+     * @param deadline  Give up at this System.nanoTime(), or 0 for no deadline.
+     * @return The exact result, or null if the solver gave up.
+     */
+    public Result solve(Board board, long nodeLimit, long deadline) {
+        long start = System.nanoTime();
+        Player toMove = Position.sideToMove(board);
+        long own = (toMove == Player.X) ? board.xPositions : board.oPositions;
+        long opp = (toMove == Player.X) ? board.oPositions : board.xPositions;
+        nodes = 0;
+        aborted = false;
+        this.nodeLimit = nodeLimit;
+        this.deadline = deadline;
+
+        // the key always has the side to move in the X slots, so it is side-neutral;
+        // swapped is the same position keyed from the other side
+        long key = Position.computeHash(own, opp);
+        long swapped = Position.computeHash(opp, own);
+        int score = search(own, opp, key, swapped, -1, -WIN, WIN, 0);
+        if (aborted) {
+            return null;
+        }
+        int move = probeMove(key);
+        return new Result(move, score, nodes, (System.nanoTime() - start) / 1000);
+    }
+
+    public long nodes() {
+        return nodes;
+    }
+
+    /**
+     * Negamax from the side to move (own) at the given ply.
+     *
+     * @param key      The position's key with own in the X slots.
+     * @param swapped  Its key with opp in the X slots.
+     * @param lastMove The opponent's last move, or -1 at the root.
+     */
+    private int search(long own, long opp, long key, long swapped, int lastMove, int alpha, int beta, int ply) {
+        nodes++;
+        if ((nodes & (TIME_CHECK_INTERVAL - 1)) == 0 &&
+                (nodes >= nodeLimit || (deadline != 0 && System.nanoTime() >= deadline))) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+
+        if (lastMove >= 0 && Geometry.completesLine(opp, lastMove)) {
+            return -(WIN - ply);
+        }
+        long occupied = own | opp;
+        if (occupied == -1L) {
+            return 0;
+        }
+
+        long wins = MoveOrdering.threatCells(own, occupied);
+        if (wins != 0) {
+            if (ply == 0) {
+                store(key, WIN - ply - 1, EXACT, Long.numberOfTrailingZeros(wins));
+            }
+            return WIN - ply - 1;
+        }
+        long blocks = MoveOrdering.threatCells(opp, occupied);
+        if (Long.bitCount(blocks) >= 2) {
+            if (ply == 0) {
+                store(key, -(WIN - ply - 2), EXACT, Long.numberOfTrailingZeros(blocks));
+            }
+            return -(WIN - ply - 2);
+        }
+
+        // mate distance pruning
+        alpha = Math.max(alpha, -(WIN - ply));
+        beta = Math.min(beta, WIN - ply - 1);
+        if (alpha >= beta) {
+            return alpha;
+        }
+
+        int slot = (int) key & cacheMask;
+        int cachedMove = -1;
+        if (cacheKeys[slot] == key) {
+            int data = cacheData[slot];
+            int value = fromCache(data >> 9, ply);
+            int bound = (data >> 7) & 0x3;
+            cachedMove = (data & 0x7F) - 1;
+            if (bound == EXACT) {
+                return value;
+            } else if (bound == LOWER) {
+                alpha = Math.max(alpha, value);
+            } else {
+                beta = Math.min(beta, value);
+            }
+            if (alpha >= beta) {
+                return value;
+            }
+        }
+
+        if (!hasLiveLine(opp) && !hasLiveLine(own)) {
+            return 0; // nobody can complete a line any more
+        }
+
+        int[] moves = moveStack[ply];
+        int count = orderMoves(own, opp, blocks, cachedMove, moves, scoreStack[ply]);
+
+        int alphaOrig = alpha;
+        int best = -WIN;
+        int bestMove = moves[0];
+        for (int i = 0; i < count; i++) {
+            int mv = moves[i];
+            // the side to move changes, so the two keys swap, and the move goes into
+            // the O slots of one and the X slots of the other
+            long childKey = swapped ^ Position.ZOBRIST[Coordinate.NCubed + mv];
+            long childSwapped = key ^ Position.ZOBRIST[mv];
+            int value = -search(opp, own | (1L << mv), childKey, childSwapped, mv, -beta, -alpha, ply + 1);
+            if (aborted) {
+                return 0;
+            }
+            if (value > best) {
+                best = value;
+                bestMove = mv;
+            }
+            if (value > alpha) {
+                alpha = value;
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+        }
+
+        int bound = best <= alphaOrig ? UPPER : best >= beta ? LOWER : EXACT;
+        store(key, toCache(best, ply), bound, bestMove);
+        return best;
+    }
+
+    /**
+     * Forced block if the opponent has an open three, else every empty cell: the
+     * cached move first, then cells that make a new own three, then cells by the
+     * number of lines through them that are still open for either side.
+     */
+    private static int orderMoves(long own, long opp, long blocks, int cachedMove, int[] moves, int[] scores) {
+        long candidates = blocks != 0 ? blocks : ~(own | opp);
+        int count = 0;
+        for (long bits = candidates; bits != 0; bits &= bits - 1) {
+            int mv = Long.numberOfTrailingZeros(bits);
+            int score;
+            if (mv == cachedMove) {
+                score = Integer.MAX_VALUE;
+            } else {
+                score = 0;
+                for (long line : Geometry.CELL_LINES[mv]) {
+                    if ((line & opp) == 0) {
+                        int n = Long.bitCount(line & own);
+                        score += (n == 2) ? 64 : 1 + n;
+                    }
+                    if ((line & own) == 0) {
+                        score += 1 + Long.bitCount(line & opp);
+                    }
+                }
+            }
+            int i = count++;
+            while (i > 0 && scores[i - 1] < score) {
+                moves[i] = moves[i - 1];
+                scores[i] = scores[i - 1];
+                i--;
+            }
+            moves[i] = mv;
+            scores[i] = score;
+        }
+        return count;
+    }
+
+    /**
+     * True if some line has none of the blocker's pieces, i.e. the other side can
+     * still complete it.
+     */
+    private static boolean hasLiveLine(long blockers) {
+        for (long line : Geometry.LINES) {
+            if ((line & blockers) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // win/loss scores are stored relative to the node, not the root
+    private static int toCache(int score, int ply) {
+        return score > WIN / 2 ? score + ply : score < -WIN / 2 ? score - ply : score;
+    }
+
+    private static int fromCache(int score, int ply) {
+        return score > WIN / 2 ? score - ply : score < -WIN / 2 ? score + ply : score;
+    }
+
+    private void store(long key, int value, int bound, int move) {
+        int slot = (int) key & cacheMask;
+        cacheKeys[slot] = key;
+        cacheData[slot] = (value << 9) | (bound << 7) | (move + 1);
+    }
+
+    private int probeMove(long key) {
+        int slot = (int) key & cacheMask;
+        return cacheKeys[slot] == key ? (cacheData[slot] & 0x7F) - 1 : -1;
+    }
+}
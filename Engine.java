@@ -0,0 +1,48 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+/**
+ * A move-choosing engine, so the game loop, the web handlers and the benchmarks
+ * can drive either the alpha-beta AIPlayer or the Monte Carlo MctsPlayer.
+ *
+ * Engines that do not think on the opponent's time can ignore the pondering calls.
+ */
+public interface Engine {
+    /**
+     * The move to play for the engine's side in this position.
+     */
+    int chooseBestMove(Board board);
+
+    /**
+     * Search statistics as a JSON object, shown by the web interface.
+     */
+    String stats();
+
+    /**
+     * board is the position after the engine's own move.
+     */
+    default void startPondering(Board board) {
+    }
+
+    /**
+     * The opponent has played move in reply to the position given to startPondering().
+     */
+    default void ponderReply(int move) {
+    }
+
+    default void stopPondering() {
+    }
+
+    /**
+     * The engine TTT3 plays with: MCTS when the JVM is started with -Dengine=mcts,
+     * the alpha-beta AIPlayer otherwise.
+     */
+    static Engine create(Player side) {
+        if ("mcts".equalsIgnoreCase(System.getProperty("engine"))) {
+            return new MctsPlayer(side);
+        }
+        return new AIPlayer(side);
+    }
+}
@@ -0,0 +1,172 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+public class EngineConfig {
+    public enum ParallelStrategy {
+        ROOT_SPLIT, // one ForkJoin task per root move
+        LAZY_SMP,   // helper threads share the transposition table only
+        YBWC        // young brothers wait splitting, reproducible at fixed depth
+    }
+
+    // transposition table memory budget
+    public int TT_SIZE_MB = 64;
+
+    // cache of static evaluations by position key, 0 to turn it off
+    public int EVAL_CACHE_MB = 2;
+
+    // principal variation search (null-window scouts after the first move)
+    public boolean PVS = true;
+
+    // aspiration windows around the previous iteration's score
+    public boolean ASPIRATION = true;
+    public int ASPIRATION_WINDOW = 400;
+
+    // parallel search
+    public ParallelStrategy PARALLEL = ParallelStrategy.LAZY_SMP;
+    public int SEARCH_THREADS = Runtime.getRuntime().availableProcessors();
+    public int YBWC_MIN_SPLIT_DEPTH = 2;
+
+    // selective search at null-window nodes without open threes: null move with
+    // depth reduction NULL_MOVE_REDUCTION (checked by a reduced search if
+    // NULL_MOVE_VERIFY), late move reductions for quiet moves from the
+    // LMR_MIN_MOVE-th on at LMR_MIN_DEPTH or more, and futility pruning of quiet
+    // moves in the last FUTILITY_DEPTH plies
+    public boolean NULL_MOVE = true;
+    public int NULL_MOVE_REDUCTION = 2;
+    public boolean NULL_MOVE_VERIFY = true;
+    public boolean LMR = true;
+    public int LMR_MIN_DEPTH = 3;
+    public int LMR_MIN_MOVE = 3;
+    public boolean FUTILITY = true;
+    public int FUTILITY_DEPTH = 2;
+
+    // canonical TT keys and symmetric move pruning over the board symmetries the
+    // evaluator respects (see Symmetry), used while a position has at most
+    // SYMMETRY_MAX_PIECES pieces
+    public boolean SYMMETRY = true;
+    public int SYMMETRY_MAX_PIECES = 12;
+
+    // opening book file consulted before searching, null to disable
+    public String OPENING_BOOK = OpeningBook.DEFAULT_FILE;
+
+    // threat-space (VCF) search before the main search
+    public boolean THREAT_SEARCH = true;
+    public int THREAT_SEARCH_NODES = 200_000;
+
+    // threat quiescence at the leaves: wins, forced blocks and forks only, with at
+    // most QUIESCENCE_NODES nodes per leaf
+    public boolean QUIESCENCE = true;
+    public int QUIESCENCE_NODES = 64;
+
+    // exact endgame solver once at most ENDGAME_EMPTIES cells are empty; it gives
+    // up (and the main search runs) after ENDGAME_NODES nodes or half the time left
+    public boolean ENDGAME_SOLVER = true;
+    public int ENDGAME_EMPTIES = 28;
+    public long ENDGAME_NODES = 10_000_000L;
+
+    // keep searching the opponent's predicted reply while they think
+    public boolean PONDER = true;
+
+    // time control: a game clock of TIME_BASE_MS plus TIME_INCREMENT_MS per move, or
+    // with TIME_BASE_MS = 0 a fixed TIME_PER_MOVE_MS per move, of which the search
+    // aims to use TIME_SOFT_FRACTION unless the best move or the score is unstable
+    public long TIME_PER_MOVE_MS = 13_800;
+    public long TIME_BASE_MS = 0;
+    public long TIME_INCREMENT_MS = 0;
+    public double TIME_SOFT_FRACTION = 0.5;
+
+    // Monte Carlo tree search (MctsPlayer): a tree of at most MCTS_TREE_NODES nodes
+    // kept between moves, PUCT selection (plain UCT if MCTS_PUCT is off) with the
+    // given exploration constant and virtual loss, playouts that take wins and
+    // blocks open threes when MCTS_THREAT_PLAYOUTS is set, and at most MCTS_PLAYOUTS
+    // playouts per move (0 = only the clock decides)
+    public int MCTS_TREE_NODES = 1 << 21;
+    public boolean MCTS_PUCT = true;
+    public double MCTS_EXPLORATION = 1.0;
+    public int MCTS_VIRTUAL_LOSS = 3;
+    public boolean MCTS_THREAT_PLAYOUTS = true;
+    public long MCTS_PLAYOUTS = 0;
+
+    // reproducible search for benchmarks: one thread, random choices from SEED, no
+    // clock. Any search stops after NODE_LIMIT nodes (0 = no limit), keeping the
+    // last depth it finished
+    public boolean DETERMINISTIC = false;
+    public long SEED = 2398558964L;
+    public long NODE_LIMIT = 0;
+
+    public EngineConfig() {
+    }
+
+    public EngineConfig copy() {
+        EngineConfig c = new EngineConfig();
+        c.TT_SIZE_MB = TT_SIZE_MB;
+        c.EVAL_CACHE_MB = EVAL_CACHE_MB;
+        c.PVS = PVS;
+        c.ASPIRATION = ASPIRATION;
+        c.ASPIRATION_WINDOW = ASPIRATION_WINDOW;
+        c.PARALLEL = PARALLEL;
+        c.SEARCH_THREADS = SEARCH_THREADS;
+        c.YBWC_MIN_SPLIT_DEPTH = YBWC_MIN_SPLIT_DEPTH;
+        c.NULL_MOVE = NULL_MOVE;
+        c.NULL_MOVE_REDUCTION = NULL_MOVE_REDUCTION;
+        c.NULL_MOVE_VERIFY = NULL_MOVE_VERIFY;
+        c.LMR = LMR;
+        c.LMR_MIN_DEPTH = LMR_MIN_DEPTH;
+        c.LMR_MIN_MOVE = LMR_MIN_MOVE;
+        c.FUTILITY = FUTILITY;
+        c.FUTILITY_DEPTH = FUTILITY_DEPTH;
+        c.SYMMETRY = SYMMETRY;
+        c.SYMMETRY_MAX_PIECES = SYMMETRY_MAX_PIECES;
+        c.OPENING_BOOK = OPENING_BOOK;
+        c.THREAT_SEARCH = THREAT_SEARCH;
+        c.THREAT_SEARCH_NODES = THREAT_SEARCH_NODES;
+        c.QUIESCENCE = QUIESCENCE;
+        c.QUIESCENCE_NODES = QUIESCENCE_NODES;
+        c.ENDGAME_SOLVER = ENDGAME_SOLVER;
+        c.ENDGAME_EMPTIES = ENDGAME_EMPTIES;
+        c.ENDGAME_NODES = ENDGAME_NODES;
+        c.PONDER = PONDER;
+        c.TIME_PER_MOVE_MS = TIME_PER_MOVE_MS;
+        c.TIME_BASE_MS = TIME_BASE_MS;
+        c.TIME_INCREMENT_MS = TIME_INCREMENT_MS;
+        c.TIME_SOFT_FRACTION = TIME_SOFT_FRACTION;
+        c.DETERMINISTIC = DETERMINISTIC;
+        c.SEED = SEED;
+        c.NODE_LIMIT = NODE_LIMIT;
+        c.MCTS_TREE_NODES = MCTS_TREE_NODES;
+        c.MCTS_PUCT = MCTS_PUCT;
+        c.MCTS_EXPLORATION = MCTS_EXPLORATION;
+        c.MCTS_VIRTUAL_LOSS = MCTS_VIRTUAL_LOSS;
+        c.MCTS_THREAT_PLAYOUTS = MCTS_THREAT_PLAYOUTS;
+        c.MCTS_PLAYOUTS = MCTS_PLAYOUTS;
+        return c;
+    }
+
+    @Override
+    public String toString() {
+        return "EngineConfig{" +
+                "TT=" + TT_SIZE_MB + "MB" +
+                ", EVAL=" + EVAL_CACHE_MB + "MB" +
+                ", PVS=" + PVS +
+                ", ASP=" + (ASPIRATION ? ASPIRATION_WINDOW : 0) +
+                ", PAR=" + PARALLEL +
+                ", THREADS=" + SEARCH_THREADS +
+                ", NULL=" + (NULL_MOVE ? NULL_MOVE_REDUCTION + (NULL_MOVE_VERIFY ? "v" : "") : "off") +
+                ", LMR=" + LMR +
+                ", FUT=" + (FUTILITY ? FUTILITY_DEPTH : 0) +
+                ", SYM=" + (SYMMETRY ? SYMMETRY_MAX_PIECES : 0) +
+                ", BOOK=" + OPENING_BOOK +
+                ", VCF=" + THREAT_SEARCH +
+                ", QS=" + (QUIESCENCE ? QUIESCENCE_NODES : 0) +
+                ", ENDGAME=" + (ENDGAME_SOLVER ? ENDGAME_EMPTIES : 0) +
+                ", PONDER=" + PONDER +
+                ", TIME=" + (TIME_BASE_MS > 0 ? TIME_BASE_MS + "+" + TIME_INCREMENT_MS : TIME_PER_MOVE_MS) + "ms" +
+                ", DET=" + (DETERMINISTIC ? SEED : "off") +
+                ", NODES=" + NODE_LIMIT +
+                ", MCTS=" + (MCTS_PUCT ? "PUCT" : "UCT") + "/" + MCTS_EXPLORATION +
+                (MCTS_THREAT_PLAYOUTS ? "/threats" : "") +
+                '}';
+    }
+}
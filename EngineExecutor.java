@@ -0,0 +1,188 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived threads shared by every engine that uses the executor, across moves
+ * and games, so a search no longer starts and tears down its own pool.
+ *
+ * It holds a work-stealing pool for root-split and YBWC tasks, reusable threads for
+ * Lazy SMP helpers and background searches, and one timer thread for progress
+ * output. Each search registers with begin() and gets a Search handle. The handle
+ * hands out helper slots fairly: while n searches are running, each one may run
+ * threads / n workers including its own thread, so concurrent games share the
+ * cores instead of each asking for all of them. The handle can also be cancelled
+ * from any thread.
+ */
+public class EngineExecutor {
+    private static EngineExecutor shared;
+
+    private final int threads;
+    private final boolean fair;
+    private final ForkJoinPool pool;
+    private final ExecutorService helperThreads;
+    private final ScheduledExecutorService timer;
+    private final AtomicInteger activeSearches = new AtomicInteger(0);
+    private final AtomicLong searchesStarted = new AtomicLong(0);
+    private final AtomicLong helpersStarted = new AtomicLong(0);
+
+    public EngineExecutor(int threads) {
+        this(threads, true);
+    }
+
+    /**
+     * @param fair If false every search gets all the helpers it asks for, which is
+     *             how searches behaved before the executor existed (benchmarks only).
+     */
+    EngineExecutor(int threads, boolean fair) {
+        this.threads = Math.max(1, threads);
+        this.fair = fair;
+        this.pool = new ForkJoinPool(this.threads, p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setDaemon(true);
+            t.setName("engine-pool-" + t.getPoolIndex());
+            return t;
+        }, null, false);
+        this.helperThreads = Executors.newCachedThreadPool(daemonThreads("engine-helper-"));
+        this.timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("engine-timer-"));
+    }
+
+    /**
+     * The executor used by engines that were not given one, sized to the machine.
+     */
+    public static synchronized EngineExecutor shared() {
+        if (shared == null) {
+            shared = new EngineExecutor(Runtime.getRuntime().availableProcessors());
+        }
+        return shared;
+    }
+
+    public Search begin() {
+        activeSearches.incrementAndGet();
+        searchesStarted.incrementAndGet();
+        return new Search();
+    }
+
+    /**
+     * Runs a whole search in the background, e.g. pondering; it should take a
+     * Search handle of its own.
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return helperThreads.submit(task);
+    }
+
+    public int threads() {
+        return threads;
+    }
+
+    public int activeSearches() {
+        return activeSearches.get();
+    }
+
+    public long searchesStarted() {
+        return searchesStarted.get();
+    }
+
+    public long helpersStarted() {
+        return helpersStarted.get();
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+        helperThreads.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger(0);
+        return r -> {
+            Thread t = new Thread(r, prefix + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * One running search. Closing it releases its share of the executor and stops
+     * its progress output; closing twice is harmless.
+     */
+    public class Search implements AutoCloseable {
+        private volatile boolean cancelled;
+        private volatile boolean closed;
+        private ScheduledFuture<?> ticker;
+        private Runnable onClose;
+
+        private Search() {
+        }
+
+        /**
+         * How many helper threads the search may start, on top of its own thread.
+         */
+        public int helperSlots(int requested) {
+            if (!fair) {
+                return requested;
+            }
+            int share = threads / Math.max(1, activeSearches.get());
+            return Math.max(0, Math.min(requested, share - 1));
+        }
+
+        public Future<?> startHelper(Runnable helper) {
+            helpersStarted.incrementAndGet();
+            return helperThreads.submit(helper);
+        }
+
+        /**
+         * Runs a task on the shared work-stealing pool and waits for it.
+         */
+        public <T> T invoke(ForkJoinTask<T> task) {
+            return pool.invoke(task);
+        }
+
+        /**
+         * Runs tick every periodMillis until the search is closed, then runs last.
+         */
+        public synchronized void every(long periodMillis, Runnable tick, Runnable last) {
+            if (closed) {
+                return;
+            }
+            ticker = timer.scheduleAtFixedRate(tick, 0, periodMillis, TimeUnit.MILLISECONDS);
+            onClose = last;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (ticker != null) {
+                ticker.cancel(false);
+                onClose.run();
+            }
+            activeSearches.decrementAndGet();
+        }
+    }
+}
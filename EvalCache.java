@@ -0,0 +1,71 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Fixed-size, lock-free cache of static evaluations, separate from the
+ * transposition table so leaf scores do not push out search results.
+ *
+ * One long per entry, indexed by the low bits of the Zobrist key: the high 32
+ * bits of the key (with bit 0 of them forced on, so an empty entry never
+ * verifies) and the 32-bit score. Entries are read and written whole with opaque
+ * access, so a racing write from another thread is either seen completely or not
+ * at all; a collision simply replaces the entry.
+ */
+public class EvalCache {
+    public static final long MISS = Long.MIN_VALUE;
+
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final long CHECK_MASK = 0xFFFFFFFF00000000L;
+    private static final long CHECK_BIT = 1L << 32;
+
+    private final long[] table;
+    private final int mask;
+
+    public EvalCache(int sizeMb) {
+        long entries = Long.highestOneBit(Math.max(1L, sizeMb * 1024L * 1024L / Long.BYTES));
+        entries = Math.min(entries, 1L << 30);
+        this.table = new long[(int) entries];
+        this.mask = (int) (entries - 1);
+    }
+
+    /**
+     * The stored score of the position, or MISS.
+     */
+    public long probe(long key) {
+        long entry = (long) LONGS.getOpaque(table, (int) key & mask);
+        return (entry & CHECK_MASK) == check(key) ? (long) (int) entry : MISS;
+    }
+
+    /**
+     * Stores a score. Scores outside the int range are not stored rather than
+     * truncated, so a hit always returns exactly what the evaluator gave.
+     */
+    public void store(long key, long score) {
+        if (score != (int) score) {
+            return;
+        }
+        LONGS.setOpaque(table, (int) key & mask, check(key) | (score & 0xFFFFFFFFL));
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0L);
+    }
+
+    public int capacity() {
+        return table.length;
+    }
+
+    public long sizeBytes() {
+        return (long) table.length * Long.BYTES;
+    }
+
+    private static long check(long key) {
+        return (key & CHECK_MASK) | CHECK_BIT;
+    }
+}
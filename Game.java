@@ -10,8 +10,8 @@ public class Game {
     public Player winner;
     public Line winningLine;
     public boolean isPlayingAgainstAI;
-    public AIPlayer aiPlayerX;
-    public AIPlayer aiPlayerO;
+    public Engine aiPlayerX;
+    public Engine aiPlayerO;
     public Player humanPlayer;
     public Player aiSide;
 
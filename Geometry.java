@@ -0,0 +1,91 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+import java.util.Arrays;
+
+/**
+ * Line tables built once from Line.lines, so the search works with plain masks
+ * instead of Line objects. A move can only complete one of the 4 or 7 lines
+ * through its cell, so a win check that knows the last move needs only
+ * CELL_LINES of that cell.
+ */
+public class Geometry {
+    public static final int LINE_COUNT = Line.lines.length;
+
+    // the four cells of each line, in Line.lines order
+    public static final long[] LINES = new long[LINE_COUNT];
+
+    // the lines through each cell, as masks and as indexes into LINES
+    public static final long[][] CELL_LINES = new long[Coordinate.NCubed][];
+    public static final int[][] CELL_LINE_INDEX = new int[Coordinate.NCubed][];
+
+    static {
+        for (int i = 0; i < LINE_COUNT; i++) {
+            LINES[i] = Line.lines[i].positions();
+        }
+        for (int cell = 0; cell < Coordinate.NCubed; cell++) {
+            int[] lines = new int[LINE_COUNT];
+            int count = 0;
+            for (int i = 0; i < LINE_COUNT; i++) {
+                if (Bit.isSet(LINES[i], cell)) {
+                    lines[count++] = i;
+                }
+            }
+            CELL_LINE_INDEX[cell] = Arrays.copyOf(lines, count);
+            CELL_LINES[cell] = new long[count];
+            for (int j = 0; j < count; j++) {
+                CELL_LINES[cell][j] = LINES[lines[j]];
+            }
+        }
+    }
+
+    /**
+     * True if pieces fill a line through cell, i.e. if the piece on cell won.
+     */
+    public static boolean completesLine(long pieces, int cell) {
+        for (long line : CELL_LINES[cell]) {
+            if ((pieces & line) == line) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The index of a line through cell that pieces fill, or -1.
+     */
+    public static int completedLine(long pieces, int cell) {
+        for (int line : CELL_LINE_INDEX[cell]) {
+            if ((pieces & LINES[line]) == LINES[line]) {
+                return line;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * True if pieces fill any line, for when the last move is not known.
+     */
+    public static boolean hasLine(long pieces) {
+        for (long line : LINES) {
+            if ((pieces & line) == line) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The index of the first line pieces fill, or -1.
+     */
+    public static int firstLine(long pieces) {
+        for (int i = 0; i < LINE_COUNT; i++) {
+            if ((pieces & LINES[i]) == LINES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
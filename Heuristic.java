@@ -32,88 +32,125 @@ public class Heuristic {
         return mask;
     }
 
-    private static final long CENTER_POSITIONS_MASK = computePositionMask(CENTER_POSITIONS);
+    static final long CENTER_POSITIONS_MASK = computePositionMask(CENTER_POSITIONS);
     private static final long PCORNER_POSITIONS_MASK = computePositionMask(PCORNER_POSITIONS);
     private static final long BCORNER_POSITIONS_MASK = computePositionMask(BCORNER_POSITIONS);
 
+    // cells scored for where they are rather than for the lines through them; a
+    // board symmetry leaves evaluate() unchanged only if it maps each onto itself
+    static final long[] POSITIONAL_MASKS = { CENTER_POSITIONS_MASK, PCORNER_POSITIONS_MASK, BCORNER_POSITIONS_MASK };
+
+
+    // per-thread line counts for evaluate(Board, ...): player, opponent and their
+    // center pieces
+    private static final ThreadLocal<long[][]> LINE_COUNTS =
+            ThreadLocal.withInitial(() -> new long[4][LineCounter.PADDED]);
+    private static final ThreadLocal<int[]> LINE_SCORES = ThreadLocal.withInitial(() -> new int[25]);
+
+    // per-thread threat maps: player, opponent
+    private static final ThreadLocal<ThreatMap[]> THREAT_MAPS =
+            ThreadLocal.withInitial(() -> new ThreatMap[] { new ThreatMap(), new ThreatMap() });
 
     /**
-     * Evaluates the board from the perspective of the specified player.
+     * Evaluates the board from the perspective of the specified player by counting
+     * the pieces on every line. The search passes a Position and gets the overload
+     * below, which gives the same score from the line counts the Position keeps.
      *
      * @param board  The current board state.
      * @param player The player for whom the evaluation is being performed.
      * @return An integer score representing the desirability of the board state.
      */
     public static long evaluate(Board board, Player player, Weights w) {
+        return evaluate(board, player, w, LineCounter.DEFAULT);
+    }
+
+    /**
+     * evaluate(Board, Player, Weights) with the line counts taken by counter, so the
+     * benchmark can compare counters. The per-line score comes from a table indexed
+     * by the player's and the opponent's count, plus the center pieces of the side
+     * the line is open for.
+     */
+    static long evaluate(Board board, Player player, Weights w, LineCounter counter) {
         int score = 0;
-        Player opponent = player.other();
 
         long playerPositions = (player == Player.X) ? board.xPositions : board.oPositions;
         long opponentPositions = (player == Player.X) ? board.oPositions : board.xPositions;
-        long occupiedPositions = playerPositions | opponentPositions;
-
-        for (Line line : Line.lines) {
-            long linePositions = line.positions();
-
-            long playerLinePositions = linePositions & playerPositions;
-            long opponentLinePositions = linePositions & opponentPositions;
-            long emptyLinePositions = linePositions & ~occupiedPositions;
-
-            int playerCount = Bit.countOnes(playerLinePositions);
-            int opponentCount = Bit.countOnes(opponentLinePositions);
-            int emptyCount = Bit.countOnes(emptyLinePositions);
-
-            if (playerCount > 0 && opponentCount == 0) {
-                // open for the player
-                int centerCount = Bit.countOnes(playerLinePositions & CENTER_POSITIONS_MASK);
-                score += getScore(playerCount, centerCount, w);
-            } else if (opponentCount > 0 && playerCount == 0) {
-                // open for the opponent
-                int centerCount = Bit.countOnes(opponentLinePositions & CENTER_POSITIONS_MASK);
-                score -= getScore(opponentCount, centerCount, w) * w.OPPONENT_SCORE_MULTIPLIER;
-            }
 
-            if (playerCount == 2 && emptyCount == 2) {
-                List<Integer> emptyPositionsList = Bit.onesList(emptyLinePositions);
-
-                for (int candidatePos : emptyPositionsList) {
-                    long hypotheticalPlayerPositions = Bit.set(playerPositions, candidatePos);
-                    long hypotheticalOccupied = occupiedPositions | Bit.positionMask(candidatePos);
-
-                    // Evaluate future forks if we place here
-                    int forksAfterPlacement = evaluatePotentialForks(hypotheticalPlayerPositions, hypotheticalOccupied);
-                    Board hypotheticalBoard = new Board();
-                    if (player == Player.X) {
-                        hypotheticalBoard.xPositions = hypotheticalPlayerPositions;
-                        hypotheticalBoard.oPositions = opponentPositions;
-                    } else {
-                        hypotheticalBoard.xPositions = opponentPositions;
-                        hypotheticalBoard.oPositions = hypotheticalPlayerPositions;
-                    }
-
-                    int moveCount = board.totalMoves();
-                    if (forksAfterPlacement > 0) {
-                        if (moveCount < 10) {
-                            score += w.SCORE_THREE;
-                        } else {
-                            score += w.SCORE_THREE * 4;
-                        }
-                    } else {
-                        score += w.SCORE_TWO * 2;
-                    }
-                }
+        long[][] counts = LINE_COUNTS.get();
+        long[] playerCounts = counts[0];
+        long[] opponentCounts = counts[1];
+        long[] playerCenters = counts[2];
+        long[] opponentCenters = counts[3];
+        counter.count(playerPositions, playerCounts);
+        counter.count(opponentPositions, opponentCounts);
+        counter.count(playerPositions & CENTER_POSITIONS_MASK, playerCenters);
+        counter.count(opponentPositions & CENTER_POSITIONS_MASK, opponentCenters);
+
+        // open lines, immediate threats and wins, by (player count, opponent count)
+        int[] lineScores = LINE_SCORES.get();
+        for (int count = 1; count <= 4; count++) {
+            lineScores[count * 5] = getScore(count, 0, w);
+            lineScores[count] = -getScore(count, 0, w) * w.OPPONENT_SCORE_MULTIPLIER;
+        }
+        lineScores[3 * 5] += w.IMMEDIATE_WIN_BONUS;
+        lineScores[3] -= w.IMMEDIATE_THREAT_PENALTY;
+
+        for (int i = 0; i < Geometry.LINE_COUNT; i++) {
+            int playerCount = (int) playerCounts[i];
+            int opponentCount = (int) opponentCounts[i];
+            score += lineScores[playerCount * 5 + opponentCount];
+            if (opponentCount == 0) {
+                score += (int) playerCenters[i] * w.CENTER_MULTIPLIER;
+            } else if (playerCount == 0) {
+                score -= (int) opponentCenters[i] * w.CENTER_MULTIPLIER * w.OPPONENT_SCORE_MULTIPLIER;
             }
+        }
 
-            // three in a row and an empty spot (immediate threat)
-            if (opponentCount == 3 && emptyCount == 1) {
-                score -= w.IMMEDIATE_THREAT_PENALTY;
-            }
+        score += controlScore(playerPositions, opponentPositions, w);
+        score += threatScore(playerPositions, opponentPositions, board.totalMoves(), w);
+        return score;
+    }
 
-            // three in a row and an empty spot (immediate win possibility)
-            if (playerCount == 3 && emptyCount == 1) {
-                score += w.IMMEDIATE_WIN_BONUS;
-            }
-        }
+    /**
+     * Evaluate(Board, Player, Weights) for a Position: the open-line terms come from
+     * its running totals instead of the line counts.
+     */
+    public static long evaluate(Position board, Player player, Weights w) {
+        int score = 0;
+        Player opponent = player.other();
+
+        long playerPositions = (player == Player.X) ? board.xPositions : board.oPositions;
+        long opponentPositions = (player == Player.X) ? board.oPositions : board.xPositions;
+
+        // open lines
+        score += openLineScore(board, player, w);
+        score -= openLineScore(board, opponent, w) * w.OPPONENT_SCORE_MULTIPLIER;
+
+        // immediate threats and wins
+        score -= board.openLines(opponent, 3) * w.IMMEDIATE_THREAT_PENALTY;
+        score += board.openLines(player, 3) * w.IMMEDIATE_WIN_BONUS;
+
+        score += controlScore(playerPositions, opponentPositions, w);
+        score += threatScore(playerPositions, opponentPositions, board.totalMoves(), w);
+        return score;
+    }
+
+    /**
+     * getScore() summed over player's open lines.
+     */
+    private static int openLineScore(Position board, Player player, Weights w) {
+        return board.openLines(player, 1) * w.SCORE_ONE
+                + board.openLines(player, 2) * w.SCORE_TWO
+                + board.openLines(player, 3) * w.SCORE_THREE
+                + board.openLines(player, 4) * w.SCORE_FOUR
+                + board.openCenters(player) * w.CENTER_MULTIPLIER;
+    }
+
+    /**
+     * Center and corner cells held by either side.
+     */
+    private static int controlScore(long playerPositions, long opponentPositions, Weights w) {
+        int score = 0;
 
         // central control
         int playerCenterControl = Bit.countOnes(playerPositions & CENTER_POSITIONS_MASK);
@@ -132,15 +169,31 @@ public class Heuristic {
         score += playerBCorners * w.BCORNER_CONTROL_MULTIPLIER;
         score -= opponentBCorners * w.OPPONENT_BCORNER_CONTROL_MULTIPLIER;
 
+        return score;
+    }
+
+    /**
+     * The fork terms, from a ThreatMap for each side: every empty cell of the
+     * player's twos scores as a fork square or as a plain two, then the forks each
+     * side has, and the forks the opponent could make with its next move.
+     */
+    private static int threatScore(long playerPositions, long opponentPositions, int moveCount, Weights w) {
+        ThreatMap[] maps = THREAT_MAPS.get();
+        ThreatMap mine = maps[0].compute(playerPositions, opponentPositions);
+        ThreatMap theirs = maps[1].compute(opponentPositions, playerPositions);
+        int score = 0;
+
+        // two in a row and two empty spots
+        int forkSquareScore = (moveCount < 10) ? w.SCORE_THREE : w.SCORE_THREE * 4;
+        score += mine.twos(mine.forkSquares) * forkSquareScore;
+        score += mine.twos(~mine.forkSquares) * w.SCORE_TWO * 2;
+
         // potential forks
-        int playerForks = evaluatePotentialForks(playerPositions, occupiedPositions);
-        int opponentForks = evaluatePotentialForks(opponentPositions, occupiedPositions);
-        score += playerForks * w.PLAYER_FORKS_MULTIPLIER;
-        score -= opponentForks * w.OPPONENT_FORKS_MULTIPLIER;
+        score += mine.forks * w.PLAYER_FORKS_MULTIPLIER;
+        score -= theirs.forks * w.OPPONENT_FORKS_MULTIPLIER;
 
         // opponent's potential forks in next move
-        int opponentPotentialForks = evaluateOpponentPotentialForks(board, opponent, occupiedPositions);
-        score -= opponentPotentialForks * w.OPPONENT_POTENTIAL_FORKS_PENALTY;
+        score -= theirs.forkTotal * w.OPPONENT_POTENTIAL_FORKS_PENALTY;
 
         return score;
     }
@@ -158,71 +211,4 @@ public class Heuristic {
 
         return baseScore;
     }
-
-    /**
-     * Evaluates potential forks for the player.
-     *
-     * @param playerPositions   Bitmask of player's positions.
-     * @param occupiedPositions Bitmask of occupied positions.
-     * @return The number of potential forks.
-     */
-    private static int evaluatePotentialForks(long playerPositions, long occupiedPositions) {
-        int forkCount = 0;
-
-        List<Long> potentialLines = new ArrayList<>();
-
-        for (Line line : Line.lines) {
-            long linePositions = line.positions();
-
-            long playerLinePositions = linePositions & playerPositions;
-            long emptyLinePositions = linePositions & ~occupiedPositions;
-
-            int playerCount = Bit.countOnes(playerLinePositions);
-            int emptyCount = Bit.countOnes(emptyLinePositions);
-
-            if (playerCount == 2 && emptyCount == 2) {
-                potentialLines.add(linePositions);
-            }
-        }
-
-        // overlapping positions in different lines
-        for (int i = 0; i < potentialLines.size(); i++) {
-            for (int j = i + 1; j < potentialLines.size(); j++) {
-                long intersection = potentialLines.get(i) & potentialLines.get(j) & ~occupiedPositions;
-                if (Bit.countOnes(intersection) > 0) {
-                    forkCount++;
-                }
-            }
-        }
-
-        return forkCount;
-    }
-
-    /**
-     * Evaluates the opponent's potential to create forks in their next move.
-     *
-     * @param board             The current board state.
-     * @param opponent          The opponent player.
-     * @param occupiedPositions Bitmask of occupied positions.
-     * @return The number of potential forks the opponent can create in their next move.
-     */
-    private static int evaluateOpponentPotentialForks(Board board, Player opponent, long occupiedPositions) {
-        int potentialForks = 0;
-
-        // simulate the opponent's move
-        List<Integer> emptyPositions = Bit.onesList(~occupiedPositions);
-
-        for (int position : emptyPositions) {
-            long newOpponentPositions = (opponent == Player.X) ? Bit.set(board.xPositions, position) : Bit.set(board.oPositions, position);
-            long newOccupiedPositions = occupiedPositions | Bit.positionMask(position);
-
-            // num forks opponent can create from this move
-            int forks = evaluatePotentialForks(newOpponentPositions, newOccupiedPositions);
-            if (forks > 0) {
-                potentialForks += forks;
-            }
-        }
-
-        return potentialForks;
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,63 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+/**
+ * Counts a set of pieces on every line at once, for the line-scanning
+ * Heuristic.evaluate(Board, ...). The line masks are held in one flat array
+ * padded to PADDED entries so a vector implementation can run over it in whole
+ * lanes; the padding lines are empty and always count 0.
+ *
+ * DEFAULT is VectorLineCounter (simd/VectorLineCounter.java) when it was compiled
+ * and the JVM runs with --add-modules jdk.incubator.vector, and Scalar otherwise
+ * or when started with -Dsimd=false:
+ *
+ *   javac --add-modules jdk.incubator.vector *.java simd/*.java
+ *   java --add-modules jdk.incubator.vector TTT3
+ */
+public interface LineCounter {
+    int PADDED = 80; // a multiple of every vector length up to 512 bits
+
+    LineCounter DEFAULT = create();
+
+    /**
+     * counts[i] = number of pieces on line i, for all PADDED lines.
+     */
+    void count(long pieces, long[] counts);
+
+    String name();
+
+    static long[] paddedLines() {
+        long[] lines = new long[PADDED];
+        System.arraycopy(Geometry.LINES, 0, lines, 0, Geometry.LINE_COUNT);
+        return lines;
+    }
+
+    static LineCounter create() {
+        if (Boolean.parseBoolean(System.getProperty("simd", "true"))) {
+            try {
+                return (LineCounter) Class.forName("VectorLineCounter").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // not compiled in, or the incubator module is not loaded
+            }
+        }
+        return new Scalar();
+    }
+
+    class Scalar implements LineCounter {
+        private final long[] lines = paddedLines();
+
+        @Override
+        public void count(long pieces, long[] counts) {
+            for (int i = 0; i < PADDED; i++) {
+                counts[i] = Long.bitCount(lines[i] & pieces);
+            }
+        }
+
+        @Override
+        public String name() {
+            return "scalar";
+        }
+    }
+}
@@ -0,0 +1,595 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monte Carlo tree search engine, an alternative to the alpha-beta AIPlayer.
+ *
+ * The tree lives in parallel primitive arrays indexed by node; the children of a
+ * node sit in one contiguous block handed out by a bump allocator. Every thread
+ * works on the same tree (tree parallelism): it walks down by PUCT (or UCT),
+ * adding a virtual loss to each node it passes so that the other threads spread
+ * out, expands a leaf once it has been visited EXPAND_VISITS times, plays one
+ * random game to the end and backs the result up the path. Visit counts and
+ * values are updated with atomic adds through VarHandles and a leaf is expanded
+ * by whichever thread wins a compare-and-set on its state, so no node is ever
+ * locked.
+ *
+ * Values are counted in half points for the player who made the move into the
+ * node: 2 for a win, 1 for a draw. Playouts run on two longs and allocate nothing.
+ * They keep each side's open-three cells up to date from the lines through the
+ * last move, which also detects the win; with MCTS_THREAT_PLAYOUTS a playout
+ * takes a win when it has one and blocks the opponent's three otherwise, so its
+ * games look far less like coin flips. Expansion does the same: a node with a win
+ * gets only that child, a node facing a three only the blocks.
+ *
+ * Between moves the subtree under the moves actually played becomes the new root,
+ * until the node arena is three quarters full and the tree starts over.
+ */
+public class MctsPlayer implements Engine {
+    private static final int MAX_PLY = Coordinate.NCubed + 1;
+    private static final int EXPAND_VISITS = 8;
+    private static final int STOP_CHECK_INTERVAL = 64;
+    private static final double FIRST_PLAY_VALUE = 0.5;
+    private static final double REUSE_LIMIT = 0.75;
+    private static final long MIN_PLAYOUTS_TO_STOP = 1_000;
+
+    // node states
+    private static final int LEAF = 0;
+    private static final int EXPANDING = 1;
+    private static final int EXPANDED = 2;
+    private static final int NO_ROOM = 3;
+
+    // how the move into a node ended the game
+    private static final byte OPEN = 0;
+    private static final byte WON = 1;
+    private static final byte DRAWN = 2;
+
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final Player aiPlayer;
+    private final EngineConfig config;
+    private final TimeManager timeManager;
+    private final long playoutLimit;
+    private EngineExecutor executor = EngineExecutor.shared();
+
+    // the tree, allocated on the first move
+    private int capacity;
+    private int[] visits;
+    private int[] value;
+    private int[] state;
+    private int[] firstChild;
+    private byte[] childCount;
+    private byte[] move;
+    private byte[] terminal;
+    private float[] prior;
+    private final AtomicInteger nextFree = new AtomicInteger(0);
+    private int root = -1;
+    private long rootX;
+    private long rootO;
+
+    private final AtomicLong playouts = new AtomicLong(0);
+    private volatile long searchStart;
+    private volatile long deadline;
+    private volatile boolean stop;
+    private long movePlayouts;
+    private long moveNanos;
+    private int lastBestMove = -1;
+    private int reusedVisits;
+    private int lastThreads;
+    private final AtomicLong totalSearches = new AtomicLong(0);
+    private final AtomicLong totalPlayouts = new AtomicLong(0);
+    private final AtomicLong treeResets = new AtomicLong(0);
+
+    /**
+     * One search thread's scratch state.
+     */
+    private static final class Worker {
+        final int[] path = new int[MAX_PLY + 1];
+        long seed;
+        long playouts;
+
+        Worker(long seed) {
+            this.seed = seed == 0 ? 0x9E3779B97F4A7C15L : seed;
+        }
+
+        // xorshift64*
+        int nextInt(int bound) {
+            seed ^= seed >>> 12;
+            seed ^= seed << 25;
+            seed ^= seed >>> 27;
+            return (int) (((seed * 0x2545F4914F6CDD1DL) >>> 33) % bound);
+        }
+    }
+
+    public MctsPlayer(Player aiPlayer) {
+        this(aiPlayer, new EngineConfig());
+    }
+
+    /**
+     * Plays on the clock in config, stopping early after MCTS_PLAYOUTS playouts if
+     * that is set.
+     */
+    public MctsPlayer(Player aiPlayer, EngineConfig config) {
+        this.aiPlayer = aiPlayer;
+        this.config = config;
+        this.timeManager = new TimeManager(config);
+        this.playoutLimit = config.MCTS_PLAYOUTS > 0 ? config.MCTS_PLAYOUTS : Long.MAX_VALUE;
+    }
+
+    /**
+     * Exactly playouts playouts per move and no clock.
+     */
+    public MctsPlayer(Player aiPlayer, long playouts, EngineConfig config) {
+        this.aiPlayer = aiPlayer;
+        this.config = config;
+        this.timeManager = TimeManager.unlimited();
+        this.playoutLimit = Math.max(1, playouts);
+    }
+
+    public void setExecutor(EngineExecutor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public int chooseBestMove(Board board) {
+        timeManager.startMove(Coordinate.NCubed - board.totalMoves());
+        long start = System.nanoTime();
+        try {
+            return search(board);
+        } finally {
+            moveNanos = System.nanoTime() - start;
+            timeManager.endMove();
+        }
+    }
+
+    private int search(Board board) {
+        totalSearches.incrementAndGet();
+        boolean xToMove = aiPlayer == Player.X;
+        long own = xToMove ? board.xPositions : board.oPositions;
+        long opp = xToMove ? board.oPositions : board.xPositions;
+        long occupied = own | opp;
+
+        // nothing to think about when the move is forced
+        long wins = MoveOrdering.threatCells(own, occupied);
+        if (wins != 0) {
+            return lastBestMove = Long.numberOfTrailingZeros(wins);
+        }
+        long blocks = MoveOrdering.threatCells(opp, occupied);
+        if (Long.bitCount(blocks) == 1 || Long.bitCount(~occupied) == 1) {
+            long forced = blocks != 0 ? blocks : ~occupied;
+            return lastBestMove = Long.numberOfTrailingZeros(forced);
+        }
+
+        moveToRoot(board);
+        playouts.set(0);
+        stop = false;
+        searchStart = System.nanoTime();
+        deadline = timeManager.isLimited() ? timeManager.softDeadline() : Long.MAX_VALUE;
+
+        try (EngineExecutor.Search search = executor.begin()) {
+            int helpers = search.helperSlots(config.SEARCH_THREADS - 1);
+            lastThreads = helpers + 1;
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < helpers; i++) {
+                Worker w = new Worker(System.nanoTime() * (i + 2));
+                running.add(search.startHelper(() -> run(w, search)));
+            }
+            run(new Worker(System.nanoTime()), search);
+            stop = true;
+            for (Future<?> f : running) {
+                try {
+                    f.get();
+                } catch (Exception e) {
+                    throw new IllegalStateException("MCTS helper failed", e);
+                }
+            }
+        }
+
+        movePlayouts = playouts.get();
+        totalPlayouts.addAndGet(movePlayouts);
+        lastBestMove = move[bestChild(root)];
+        return lastBestMove;
+    }
+
+    /**
+     * Reuses the subtree under the moves played since the last search if it is still
+     * in the tree, else starts a new tree.
+     */
+    private void moveToRoot(Board board) {
+        if (visits == null) {
+            capacity = Math.max(Coordinate.NCubed + 1, config.MCTS_TREE_NODES);
+            visits = new int[capacity];
+            value = new int[capacity];
+            state = new int[capacity];
+            firstChild = new int[capacity];
+            childCount = new byte[capacity];
+            move = new byte[capacity];
+            terminal = new byte[capacity];
+            prior = new float[capacity];
+        }
+
+        int node = root;
+        if (node >= 0 && nextFree.get() < capacity * REUSE_LIMIT) {
+            long newX = board.xPositions & ~rootX;
+            long newO = board.oPositions & ~rootO;
+            boolean xToMove = Long.bitCount(rootX) == Long.bitCount(rootO);
+            if ((rootX & ~board.xPositions) != 0 || (rootO & ~board.oPositions) != 0) {
+                node = -1;
+            }
+            while (node >= 0 && (newX | newO) != 0) {
+                long played = xToMove ? newX : newO;
+                node = Long.bitCount(played) == 1 ? findChild(node, Long.numberOfTrailingZeros(played)) : -1;
+                if (xToMove) {
+                    newX = 0;
+                } else {
+                    newO = 0;
+                }
+                xToMove = !xToMove;
+            }
+        } else {
+            node = -1;
+        }
+
+        if (node < 0 || terminal[node] != OPEN || state[node] == NO_ROOM) {
+            if (root >= 0) {
+                treeResets.incrementAndGet();
+            }
+            node = 0;
+            nextFree.set(1);
+            initNode(node, -1, OPEN, 1f);
+        }
+        root = node;
+        rootX = board.xPositions;
+        rootO = board.oPositions;
+        reusedVisits = visits[node];
+    }
+
+    private int findChild(int node, int cell) {
+        if ((int) INTS.getAcquire(state, node) != EXPANDED) {
+            return -1;
+        }
+        int first = firstChild[node];
+        for (int c = first; c < first + childCount[node]; c++) {
+            if (move[c] == cell) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    private void initNode(int node, int cell, byte end, float p) {
+        visits[node] = 0;
+        value[node] = 0;
+        state[node] = LEAF;
+        firstChild[node] = 0;
+        childCount[node] = 0;
+        move[node] = (byte) cell;
+        terminal[node] = end;
+        prior[node] = p;
+    }
+
+    private void run(Worker w, EngineExecutor.Search search) {
+        do {
+            iterate(w);
+            w.playouts++;
+            if ((w.playouts & (STOP_CHECK_INTERVAL - 1)) == 0 && shouldStop(search)) {
+                stop = true;
+            }
+        } while (!stop && playouts.incrementAndGet() < playoutLimit);
+        stop = true;
+    }
+
+    private boolean shouldStop(EngineExecutor.Search search) {
+        if (search.isCancelled()) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (now >= deadline) {
+            return true;
+        }
+        // stop early once the most visited move cannot be caught in the time left
+        if (timeManager.isLimited() && playoutLimit == Long.MAX_VALUE) {
+            long done = playouts.get();
+            if (done >= MIN_PLAYOUTS_TO_STOP) {
+                double rate = (double) done / Math.max(1, now - searchStart);
+                long remaining = (long) (rate * (deadline - now));
+                return leadOverSecond(root) > remaining;
+            }
+        }
+        return false;
+    }
+
+    private int leadOverSecond(int node) {
+        if ((int) INTS.getAcquire(state, node) != EXPANDED) {
+            return 0;
+        }
+        int first = firstChild[node];
+        int best = 0;
+        int second = 0;
+        for (int c = first; c < first + childCount[node]; c++) {
+            int n = visits[c];
+            if (n > best) {
+                second = best;
+                best = n;
+            } else if (n > second) {
+                second = n;
+            }
+        }
+        return best - second;
+    }
+
+    /**
+     * One selection, expansion, playout and backup.
+     */
+    private void iterate(Worker w) {
+        int[] path = w.path;
+        int virtualLoss = config.MCTS_VIRTUAL_LOSS;
+        long own = aiPlayer == Player.X ? rootX : rootO;
+        long opp = aiPlayer == Player.X ? rootO : rootX;
+        int node = root;
+        int length = 0;
+        path[length++] = node;
+        INTS.getAndAdd(visits, node, 1);
+
+        // the side to move at path[i] is the root side for even i
+        while (terminal[node] == OPEN) {
+            int s = (int) INTS.getAcquire(state, node);
+            if (s == LEAF && (node == root || visits[node] >= EXPAND_VISITS)) {
+                s = expand(node, own, opp);
+            }
+            if (s != EXPANDED) {
+                break;
+            }
+            node = select(node);
+            INTS.getAndAdd(visits, node, virtualLoss);
+            path[length++] = node;
+            long bit = 1L << move[node];
+            long t = opp;
+            opp = own | bit;
+            own = t;
+        }
+
+        // own is the side to move at node, opp the side that moved into it
+        int result;
+        if (terminal[node] == WON) {
+            result = -1;
+        } else if (terminal[node] == DRAWN) {
+            result = 0;
+        } else {
+            result = playout(w, own, opp);
+        }
+
+        // result is from the side to move at node; flip it on the way up
+        int reward = 1 - result; // half points for the side that moved into node
+        for (int i = length - 1; i > 0; i--) {
+            int n = path[i];
+            INTS.getAndAdd(visits, n, 1 - virtualLoss);
+            INTS.getAndAdd(value, n, reward);
+            reward = 2 - reward;
+        }
+    }
+
+    /**
+     * Adds the children of node, or finds that another thread is doing it or that
+     * the arena is full. Returns the node's state afterwards.
+     */
+    private int expand(int node, long own, long opp) {
+        if (!INTS.compareAndSet(state, node, LEAF, EXPANDING)) {
+            return (int) INTS.getAcquire(state, node);
+        }
+        long occupied = own | opp;
+        long candidates = MoveOrdering.threatCells(own, occupied);
+        if (candidates != 0) {
+            candidates = Long.lowestOneBit(candidates);
+        } else {
+            long blocks = MoveOrdering.threatCells(opp, occupied);
+            candidates = blocks != 0 ? blocks : ~occupied;
+        }
+        int count = Long.bitCount(candidates);
+        int first = nextFree.getAndAdd(count);
+        if (first + count > capacity) {
+            INTS.setRelease(state, node, NO_ROOM);
+            return NO_ROOM;
+        }
+
+        float total = 0;
+        int c = first;
+        for (long bits = candidates; bits != 0; bits &= bits - 1) {
+            int cell = Long.numberOfTrailingZeros(bits);
+            long after = own | (1L << cell);
+            byte end = Geometry.completesLine(after, cell) ? WON : (after | opp) == -1L ? DRAWN : OPEN;
+            float p = config.MCTS_PUCT ? openness(own, opp, cell) : 1f;
+            initNode(c++, cell, end, p);
+            total += p;
+        }
+        for (c = first; c < first + count; c++) {
+            prior[c] /= total;
+        }
+        firstChild[node] = first;
+        childCount[node] = (byte) count;
+        INTS.setRelease(state, node, EXPANDED);
+        return EXPANDED;
+    }
+
+    /**
+     * Prior for PUCT: the cell's lines still open for either side, weighted by the
+     * pieces already on them.
+     */
+    private static float openness(long own, long opp, int cell) {
+        float score = 1;
+        for (long line : Geometry.CELL_LINES[cell]) {
+            if ((line & opp) == 0) {
+                score += 1 + Long.bitCount(line & own);
+            }
+            if ((line & own) == 0) {
+                score += 1 + Long.bitCount(line & opp);
+            }
+        }
+        return score;
+    }
+
+    private int select(int node) {
+        int first = firstChild[node];
+        int count = childCount[node];
+        double parentVisits = Math.max(1, visits[node]);
+        double c = config.MCTS_EXPLORATION;
+        double sqrtParent = Math.sqrt(parentVisits);
+        double logParent = Math.log(parentVisits);
+        int best = first;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < first + count; child++) {
+            if (terminal[child] == WON) {
+                return child;
+            }
+            int n = visits[child];
+            double q = n > 0 ? value[child] / (2.0 * n) : FIRST_PLAY_VALUE;
+            double score;
+            if (config.MCTS_PUCT) {
+                score = q + c * prior[child] * sqrtParent / (1 + n);
+            } else {
+                score = n > 0 ? q + c * Math.sqrt(logParent / n) : Double.MAX_VALUE;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The most visited child, ties going to the better value.
+     */
+    private int bestChild(int node) {
+        int first = firstChild[node];
+        int best = first;
+        for (int c = first + 1; c < first + childCount[node]; c++) {
+            if (terminal[c] == WON) {
+                return c;
+            }
+            if (visits[c] > visits[best] ||
+                    (visits[c] == visits[best] && value[c] > value[best])) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Random game from the side to move (own). Returns 1 if own wins, -1 if it
+     * loses and 0 for a draw.
+     */
+    private int playout(Worker w, long own, long opp) {
+        boolean threats = config.MCTS_THREAT_PLAYOUTS;
+        long occupied = own | opp;
+        long ownThrees = MoveOrdering.threatCells(own, occupied);
+        long oppThrees = MoveOrdering.threatCells(opp, occupied);
+        int sign = 1;
+        while (occupied != -1L) {
+            int cell;
+            if (threats && ownThrees != 0) {
+                return sign;
+            } else if (threats && oppThrees != 0) {
+                if ((oppThrees & (oppThrees - 1)) != 0) {
+                    return -sign; // two threes cannot both be blocked
+                }
+                cell = Long.numberOfTrailingZeros(oppThrees);
+            } else {
+                long empty = ~occupied;
+                for (int skip = w.nextInt(Long.bitCount(empty)); skip > 0; skip--) {
+                    empty &= empty - 1;
+                }
+                cell = Long.numberOfTrailingZeros(empty);
+            }
+            long bit = 1L << cell;
+            if ((ownThrees & bit) != 0) {
+                return sign;
+            }
+            own |= bit;
+            occupied |= bit;
+            oppThrees &= ~bit;
+            for (long line : Geometry.CELL_LINES[cell]) {
+                if ((line & opp) == 0 && Long.bitCount(line & own) == 3) {
+                    ownThrees |= line & ~own;
+                }
+            }
+            ownThrees &= ~bit;
+
+            long t = own;
+            own = opp;
+            opp = t;
+            t = ownThrees;
+            ownThrees = oppThrees;
+            oppThrees = t;
+            sign = -sign;
+        }
+        return 0;
+    }
+
+    public long getPlayoutCount() {
+        return movePlayouts;
+    }
+
+    public int getTreeSize() {
+        return nextFree.get();
+    }
+
+    @Override
+    public String stats() {
+        Map<String, Object> statsMap = new LinkedHashMap<>();
+        statsMap.put("engine", "MCTS");
+        statsMap.put("selection", config.MCTS_PUCT ? "PUCT" : "UCT");
+        statsMap.put("threatPlayouts", config.MCTS_THREAT_PLAYOUTS);
+        statsMap.put("mctsThreads", lastThreads);
+        statsMap.put("playouts", movePlayouts);
+        statsMap.put("playoutsPerSecond", moveNanos > 0 ? movePlayouts * 1_000_000_000L / moveNanos : 0);
+        statsMap.put("treeNodes", Math.min(nextFree.get(), capacity));
+        statsMap.put("treeCapacity", capacity);
+        statsMap.put("treeResets", treeResets.get());
+        statsMap.put("reusedVisits", reusedVisits);
+        if (root >= 0 && visits[root] > 0 && state[root] == EXPANDED) {
+            int best = bestChild(root);
+            statsMap.put("rootVisits", visits[root]);
+            statsMap.put("bestMoveVisits", visits[best]);
+            statsMap.put("bestMoveWinRate", visits[best] > 0 ? value[best] / (2.0 * visits[best]) : 0.0);
+        }
+        statsMap.put("lastBestMove", lastBestMove);
+        statsMap.put("timeTargetMs", timeManager.targetMillis());
+        statsMap.put("timeUsedMs", timeManager.lastMoveMillis());
+        statsMap.put("clockRemainingMs", timeManager.remainingMillis());
+        statsMap.put("totalSearches", totalSearches.get());
+        statsMap.put("totalPlayouts", totalPlayouts.get());
+
+        StringBuilder jsonBuilder = new StringBuilder();
+        jsonBuilder.append("{");
+        Iterator<Map.Entry<String, Object>> iterator = statsMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Object> entry = iterator.next();
+            jsonBuilder.append("\"").append(entry.getKey()).append("\": ");
+            Object v = entry.getValue();
+            if (v instanceof Number || v instanceof Boolean) {
+                jsonBuilder.append(v);
+            } else {
+                jsonBuilder.append("\"").append(v).append("\"");
+            }
+            if (iterator.hasNext()) {
+                jsonBuilder.append(", ");
+            }
+        }
+        jsonBuilder.append("}");
+        return jsonBuilder.toString();
+    }
+}
@@ -9,8 +9,13 @@ import com.sun.net.httpserver.HttpHandler;
 import java.io.*;
 
 class MoveHandler implements HttpHandler {
+    private final Game game;
     private int selectedMove = -1;
 
+    MoveHandler(Game game) {
+        this.game = game;
+    }
+
     @Override
     public void handle(HttpExchange t) throws IOException {
         try {
@@ -27,6 +32,11 @@ class MoveHandler implements HttpHandler {
                 if (params.length == 2 && params[0].equals("move")) {
                     selectedMove = Integer.parseInt(params[1]);
                     System.out.println("Received move: " + selectedMove);
+                    // let a pondering engine keep (or drop) its search right away
+                    Engine ai = (game.aiSide == Player.X) ? game.aiPlayerX : game.aiPlayerO;
+                    if (ai != null && game.aiSide != null) {
+                        ai.ponderReply(selectedMove);
+                    }
                 }
                 t.getResponseHeaders().add("Access-Control-Allow-Origin", "*"); // For CORS
                 t.sendResponseHeaders(200, -1);
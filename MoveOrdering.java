@@ -0,0 +1,145 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+/**
+ * Move ordering for interior search nodes, without calling the evaluator.
+ *
+ * Moves are ranked as: the TT move, moves that win on the spot, moves that block
+ * an opponent's open three, the two killer moves for the ply, then the history
+ * score for (side, cell), with the number of lines through the cell (7 for the
+ * corners and centre cells, 4 for the rest) as the final tiebreak.
+ *
+ * Killers are per search thread. The history table can be shared between threads;
+ * racing increments only make it slightly less accurate.
+ */
+public class MoveOrdering {
+    public static final int MAX_PLY = 64;
+
+    private static final int TT_MOVE_SCORE = 1 << 30;
+    private static final int WIN_SCORE = 1 << 29;
+    private static final int BLOCK_SCORE = 1 << 28;
+    private static final int KILLER_SCORE = 1 << 27;
+    private static final int HISTORY_LIMIT = 1 << 20;
+
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[][] history;
+
+    long cutoffs;
+    long firstMoveCutoffs;
+
+    public MoveOrdering(int[][] history) {
+        this.history = history;
+        for (int[] k : killers) {
+            k[0] = -1;
+            k[1] = -1;
+        }
+    }
+
+    public static int[][] newHistoryTable() {
+        return new int[2][Coordinate.NCubed];
+    }
+
+    /**
+     * Fills moves/scores with the empty cells of the board, best first.
+     *
+     * @return The number of moves.
+     */
+    public int order(Board b, Player toMove, int ttMove, int ply, int[] moves, int[] scores) {
+        long own = (toMove == Player.X) ? b.xPositions : b.oPositions;
+        long opp = (toMove == Player.X) ? b.oPositions : b.xPositions;
+        long occupied = own | opp;
+        long wins = threatCells(own, occupied);
+        long blocks = threatCells(opp, occupied);
+        int side = toMove.ordinal();
+        int k0 = ply < MAX_PLY ? killers[ply][0] : -1;
+        int k1 = ply < MAX_PLY ? killers[ply][1] : -1;
+
+        int count = 0;
+        for (long empty = ~occupied; empty != 0; empty &= empty - 1) {
+            int mv = Long.numberOfTrailingZeros(empty);
+            long mask = 1L << mv;
+            int score;
+            if (mv == ttMove) {
+                score = TT_MOVE_SCORE;
+            } else if ((wins & mask) != 0) {
+                score = WIN_SCORE;
+            } else if ((blocks & mask) != 0) {
+                score = BLOCK_SCORE;
+            } else if (mv == k0) {
+                score = KILLER_SCORE + 1;
+            } else if (mv == k1) {
+                score = KILLER_SCORE;
+            } else {
+                score = history[side][mv] * 8 + Geometry.CELL_LINES[mv].length;
+            }
+
+            // insertion sort, the lists are at most 64 long
+            int i = count++;
+            while (i > 0 && scores[i - 1] < score) {
+                moves[i] = moves[i - 1];
+                scores[i] = scores[i - 1];
+                i--;
+            }
+            moves[i] = mv;
+            scores[i] = score;
+        }
+        return count;
+    }
+
+    /**
+     * Whether an order() score belongs to a plain move rather than the TT move, a
+     * win, a block or a killer.
+     */
+    public static boolean isQuiet(int score) {
+        return score < KILLER_SCORE;
+    }
+
+    public int history(Player toMove, int move) {
+        return history[toMove.ordinal()][move];
+    }
+
+    public int maxHistory(Player toMove) {
+        int max = 0;
+        for (int h : history[toMove.ordinal()]) {
+            max = Math.max(max, h);
+        }
+        return max;
+    }
+
+    /**
+     * Records a beta cutoff: the move becomes a killer for this ply and its history
+     * score grows with the square of the remaining depth.
+     */
+    public void recordCutoff(int move, Player toMove, int ply, int depth, boolean firstMove) {
+        cutoffs++;
+        if (firstMove) {
+            firstMoveCutoffs++;
+        }
+        if (ply < MAX_PLY && killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int[] h = history[toMove.ordinal()];
+        h[move] += depth * depth;
+        if (h[move] > HISTORY_LIMIT) {
+            for (int i = 0; i < h.length; i++) {
+                h[i] >>= 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the empty cells that would complete a line for the given side.
+     */
+    public static long threatCells(long own, long occupied) {
+        long cells = 0L;
+        for (long linePositions : Geometry.LINES) {
+            if (Long.bitCount(linePositions & own) == 3) {
+                cells |= linePositions & ~occupied;
+            }
+        }
+        return cells;
+    }
+}
@@ -39,7 +39,7 @@ public class NettyHandler {
         server.createContext("/gamestate", gameStateHandler);
 
         // Handle move submissions
-        this.moveHandler = new MoveHandler();
+        this.moveHandler = new MoveHandler(game);
         server.createContext("/move", this.moveHandler);
 
         // restarting
@@ -54,6 +54,12 @@ public class NettyHandler {
         this.statsHandler = new StatsHandler(game);
 		server.createContext("/stats", this.statsHandler);
 
+        // exact solver, /solve?board=<64 chars>&mode=dfpn (defaults to the current board and PN2)
+        server.createContext("/solve", new SolveHandler(game));
+
+        // multi-PV analysis, /analyze?board=<64 chars>&k=3&depth=5 (defaults to the current board)
+        server.createContext("/analyze", new AnalyzeHandler(game));
+
 		server.createContext("/sounds", exchange -> {
             if ("GET".equalsIgnoreCase(exchange.getRequestMethod())) {
                 String requested = exchange.getRequestURI().getPath().replace("/sounds/", "");
@@ -147,9 +153,9 @@ public class NettyHandler {
                     config.humanPlayer = chosenSide;
                     Player aiSide = config.humanPlayer.other();
                     if (aiSide == Player.X && config.aiPlayerX == null) {
-                        config.aiPlayerX = new AIPlayer(Player.X);
+                        config.aiPlayerX = Engine.create(Player.X);
                     } else if (aiSide == Player.O && config.aiPlayerO == null) {
-                        config.aiPlayerO = new AIPlayer(Player.O);
+                        config.aiPlayerO = Engine.create(Player.O);
                     }
                     game.humanPlayer = config.humanPlayer;
                     game.aiPlayerX = config.aiPlayerX;
@@ -187,4 +193,116 @@ public class NettyHandler {
             }
         }
     }
+
+    static class SolveHandler implements HttpHandler {
+        private final Game game;
+        private ProofNumberSearch solver; // created on the first request, it holds a large table
+
+        public SolveHandler(Game game) {
+            this.game = game;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if ("GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                String boardString = game.board.toString();
+                boolean depthFirst = false;
+                String query = exchange.getRequestURI().getQuery();
+                if (query != null) {
+                    for (String param : query.split("&")) {
+                        String[] kv = param.split("=", 2);
+                        if (kv.length == 2 && kv[0].equals("board")) {
+                            boardString = kv[1];
+                        } else if (kv.length == 2 && kv[0].equals("mode")) {
+                            depthFirst = kv[1].equalsIgnoreCase("dfpn");
+                        }
+                    }
+                }
+
+                int status = 200;
+                String response;
+                try {
+                    Board board = Board.valueOf(boardString);
+                    synchronized (this) {
+                        if (solver == null) {
+                            solver = new ProofNumberSearch();
+                        }
+                        response = depthFirst ? solver.solveDepthFirst(board).toJson() : solver.solve(board).toJson();
+                    }
+                } catch (IllegalArgumentException e) {
+                    status = 400;
+                    response = "Invalid board configuration: " + e.getMessage();
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(status, response.length());
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(response.getBytes());
+                }
+            } else {
+                exchange.sendResponseHeaders(405, -1);
+            }
+        }
+    }
+
+    static class AnalyzeHandler implements HttpHandler {
+        private static final int DEFAULT_LINES = 3;
+        private static final int DEFAULT_DEPTH = 4;
+        private static final int MAX_DEPTH = 8;
+
+        // every request gets its own engine, so it gets small tables
+        private static final EngineConfig CONFIG = new EngineConfig();
+        static {
+            CONFIG.TT_SIZE_MB = 4;
+            CONFIG.EVAL_CACHE_MB = 1;
+        }
+
+        private final Game game;
+
+        public AnalyzeHandler(Game game) {
+            this.game = game;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if ("GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                String boardString = game.board.toString();
+                int lines = DEFAULT_LINES;
+                int depth = DEFAULT_DEPTH;
+                int status = 200;
+                String response;
+                try {
+                    String query = exchange.getRequestURI().getQuery();
+                    if (query != null) {
+                        for (String param : query.split("&")) {
+                            String[] kv = param.split("=", 2);
+                            if (kv.length == 2 && kv[0].equals("board")) {
+                                boardString = kv[1];
+                            } else if (kv.length == 2 && kv[0].equals("k")) {
+                                lines = Integer.parseInt(kv[1]);
+                            } else if (kv.length == 2 && kv[0].equals("depth")) {
+                                depth = Math.max(1, Math.min(MAX_DEPTH, Integer.parseInt(kv[1])));
+                            }
+                        }
+                    }
+                    Board board = Board.valueOf(boardString);
+                    if (board.isFull()) {
+                        throw new IllegalArgumentException("the board is full");
+                    }
+                    lines = Math.max(1, Math.min(lines, Coordinate.NCubed - board.totalMoves()));
+                    AIPlayer analyst = new AIPlayer(Position.sideToMove(board), depth, CONFIG);
+                    response = analyst.analyze(board, lines).toJson();
+                } catch (IllegalArgumentException e) {
+                    status = 400;
+                    response = "Invalid analysis request: " + e.getMessage();
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(status, response.length());
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(response.getBytes());
+                }
+            } else {
+                exchange.sendResponseHeaders(405, -1);
+            }
+        }
+    }
 }
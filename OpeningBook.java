@@ -0,0 +1,350 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Precomputed opening book keyed by symmetry-canonical position.
+ *
+ * File layout (little endian):
+ *   header   8 bytes magic, 4 bytes version, 4 bytes record count
+ *   records  16 bytes each, sorted by key as a signed long:
+ *            8 bytes canonical key, 4 bytes score, 1 byte best move in the
+ *            canonical frame, 1 byte search depth, 2 bytes padding
+ *
+ * The reader memory-maps the file and binary-searches it, so a lookup is a few
+ * dozen reads from the page cache and the book costs no heap.
+ *
+ * Usage: java OpeningBook build [plies] [depth] [file] [threads]
+ *        java OpeningBook stats [file]
+ *
+ * The builder searches every canonical position with 2 to plies pieces (the first
+ * two moves are covered by OPTIMAL_PAIRS in AIPlayer). Finished positions are
+ * appended to <file>.partial as they complete, so an interrupted build picks up
+ * where it stopped when run again with the same arguments.
+ */
+public class OpeningBook {
+    public static final String DEFAULT_FILE = "opening_book.bin";
+
+    private static final long MAGIC = 0x4B4F4F4252444E50L; // "PNDRBOOK"
+    // 2: keys canonical under Symmetry's evaluator-preserving maps only
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 16;
+
+    // one mapping per file for every AIPlayer in the JVM
+    private static final Map<String, OpeningBook> OPEN_BOOKS = new ConcurrentHashMap<>();
+
+    public static class Entry {
+        public final int move;
+        public final int score;
+        public final int depth;
+
+        Entry(int move, int score, int depth) {
+            this.move = move;
+            this.score = score;
+            this.depth = depth;
+        }
+    }
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+
+    private OpeningBook(MappedByteBuffer buffer, int count) {
+        this.buffer = buffer;
+        this.count = count;
+    }
+
+    /**
+     * Returns the book stored in the given file, mapping it on first use, or null if
+     * the file does not exist or is not a book. Failed lookups are not remembered,
+     * so a book built or copied in later is picked up by the next call.
+     */
+    public static OpeningBook open(String file) {
+        return OPEN_BOOKS.computeIfAbsent(file, f -> {
+            try {
+                return map(Paths.get(f));
+            } catch (IOException | IllegalStateException e) {
+                return null; // no mapping is recorded
+            }
+        });
+    }
+
+    private static OpeningBook map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.size() < HEADER_BYTES || buffer.getLong(0) != MAGIC || buffer.getInt(8) != VERSION) {
+                throw new IllegalStateException("Not an opening book: " + path);
+            }
+            int count = buffer.getInt(12);
+            if (channel.size() < HEADER_BYTES + (long) count * RECORD_BYTES) {
+                throw new IllegalStateException("Truncated opening book: " + path);
+            }
+            return new OpeningBook(buffer, count);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Looks a position up under its canonical key.
+     *
+     * @return The stored entry with the move mapped back onto this board, or null.
+     */
+    public Entry lookup(Board board) {
+        long[] hashes = Symmetry.hashes(board.xPositions, board.oPositions);
+        int sym = Symmetry.canonical(hashes);
+        int index = find(hashes[sym]);
+        if (index < 0) {
+            return null;
+        }
+        int offset = HEADER_BYTES + index * RECORD_BYTES;
+        int move = Symmetry.transformCell(Symmetry.inverse(sym), buffer.get(offset + 12));
+        return new Entry(move, buffer.getInt(offset + 8), buffer.get(offset + 13));
+    }
+
+    private int find(long key) {
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long midKey = buffer.getLong(HEADER_BYTES + mid * RECORD_BYTES);
+            if (midKey < key) {
+                lo = mid + 1;
+            } else if (midKey > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // ---------------------------------------------------------------- builder
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "stats";
+        if (mode.equals("build")) {
+            int plies = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+            int depth = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+            String file = args.length > 3 ? args[3] : DEFAULT_FILE;
+            int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+            build(plies, depth, Paths.get(file), threads);
+        } else if (mode.equals("stats")) {
+            stats(args.length > 1 ? args[1] : DEFAULT_FILE);
+        } else {
+            System.out.println("Unknown mode: " + mode);
+        }
+    }
+
+    /**
+     * One canonical representative of every position with up to plies pieces that
+     * is not already decided.
+     */
+    static List<List<Board>> canonicalPositions(int plies) {
+        List<List<Board>> levels = new ArrayList<>();
+        List<Board> level = new ArrayList<>();
+        level.add(new Board());
+        levels.add(level);
+        for (int ply = 1; ply <= plies; ply++) {
+            Player toMove = (ply % 2 == 1) ? Player.X : Player.O;
+            Set<Long> seen = new HashSet<>();
+            List<Board> next = new ArrayList<>();
+            for (Board parent : level) {
+                for (long empty = ~(parent.xPositions | parent.oPositions); empty != 0; empty &= empty - 1) {
+                    int cell = Long.numberOfTrailingZeros(empty);
+                    Board child = new Board();
+                    child.xPositions = parent.xPositions;
+                    child.oPositions = parent.oPositions;
+                    child.makeMove(cell, toMove);
+                    if (child.hasWon(toMove, cell)) {
+                        continue;
+                    }
+                    long[] hashes = Symmetry.hashes(child.xPositions, child.oPositions);
+                    if (seen.add(hashes[Symmetry.canonical(hashes)])) {
+                        next.add(child);
+                    }
+                }
+            }
+            levels.add(next);
+            level = next;
+        }
+        return levels;
+    }
+
+    static void build(int plies, int depth, Path file, int threads) throws Exception {
+        Path partial = Paths.get(file + ".partial");
+        Set<Long> done = ConcurrentHashMap.newKeySet();
+        List<byte[]> records = new ArrayList<>();
+        if (Files.exists(partial)) {
+            byte[] bytes = Files.readAllBytes(partial);
+            ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            // a torn last record from an interrupted build is dropped and redone
+            for (int offset = 0; offset + RECORD_BYTES <= bytes.length; offset += RECORD_BYTES) {
+                done.add(in.getLong(offset));
+                records.add(Arrays.copyOfRange(bytes, offset, offset + RECORD_BYTES));
+            }
+            try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+                channel.truncate((long) records.size() * RECORD_BYTES);
+            }
+            System.out.println("Resuming: " + records.size() + " positions already searched");
+        }
+
+        List<Board> todo = new ArrayList<>();
+        List<List<Board>> levels = canonicalPositions(plies);
+        for (int ply = 2; ply < levels.size(); ply++) {
+            for (Board b : levels.get(ply)) {
+                long[] hashes = Symmetry.hashes(b.xPositions, b.oPositions);
+                if (!done.contains(hashes[Symmetry.canonical(hashes)])) {
+                    todo.add(b);
+                }
+            }
+            System.out.println(ply + " plies: " + levels.get(ply).size() + " canonical positions");
+        }
+        System.out.println("Searching " + todo.size() + " positions to depth " + depth + " on " + threads + " threads");
+
+        EngineConfig config = new EngineConfig();
+        config.TT_SIZE_MB = 16;
+        config.SEARCH_THREADS = 1; // parallelism comes from searching positions side by side
+        config.OPENING_BOOK = null;
+
+        long start = System.currentTimeMillis();
+        AtomicInteger finished = new AtomicInteger();
+        int failed = 0;
+        Throwable failure = null;
+        try (RandomAccessFile out = new RandomAccessFile(partial.toFile(), "rw")) {
+            out.seek(out.length());
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<?>> tasks = new ArrayList<>();
+            for (Board b : todo) {
+                tasks.add(pool.submit(() -> {
+                    byte[] record = search(b, depth, config);
+                    synchronized (out) {
+                        try {
+                            out.write(record);
+                        } catch (IOException e) {
+                            throw new IllegalStateException("Could not write " + partial, e);
+                        }
+                        records.add(record);
+                    }
+                    int n = finished.incrementAndGet();
+                    if (n % 50 == 0 || n == todo.size()) {
+                        long elapsed = System.currentTimeMillis() - start;
+                        System.out.printf("%d/%d positions, %.1f s, ~%.0f s left%n", n, todo.size(),
+                                elapsed / 1000.0, (double) elapsed / n * (todo.size() - n) / 1000.0);
+                    }
+                }));
+            }
+            pool.shutdown();
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+        }
+
+        // an incomplete book is never published; the partial file resumes the build
+        if (failure != null) {
+            throw new IllegalStateException(failed + " of " + todo.size() + " positions failed, " + partial
+                    + " kept for resuming", failure);
+        }
+        write(records, file);
+        Files.delete(partial);
+        System.out.println("Wrote " + records.size() + " positions to " + file);
+    }
+
+    /**
+     * Searches one position and returns its book record.
+     */
+    private static byte[] search(Board board, int depth, EngineConfig config) {
+        Player toMove = Position.sideToMove(board);
+        AIPlayer ai = new AIPlayer(toMove, depth, config.copy());
+        int move = ai.chooseBestMove(board);
+
+        long[] hashes = Symmetry.hashes(board.xPositions, board.oPositions);
+        int sym = Symmetry.canonical(hashes);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        record.putLong(hashes[sym]);
+        record.putInt((int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, ai.getLastScore())));
+        record.put((byte) Symmetry.transformCell(sym, move));
+        record.put((byte) ai.getLastDepth());
+        return record.array();
+    }
+
+    private static void write(List<byte[]> records, Path file) throws IOException {
+        records.sort((r1, r2) -> Long.compare(key(r1), key(r2)));
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + records.size() * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        out.putLong(MAGIC);
+        out.putInt(VERSION);
+        out.putInt(records.size());
+        for (byte[] record : records) {
+            out.put(record);
+        }
+        // write next to the target and move it into place, so readers never see half a book
+        Path tmp = Paths.get(file + ".tmp");
+        Files.write(tmp, out.array());
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static long key(byte[] record) {
+        return ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN).getLong(0);
+    }
+
+    static void stats(String file) {
+        OpeningBook book = open(file);
+        if (book == null) {
+            System.out.println("No opening book at " + file);
+            return;
+        }
+        System.out.println(book.size() + " positions in " + file);
+
+        List<List<Board>> levels = canonicalPositions(4);
+        int lookups = 0;
+        int hits = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < 10; round++) {
+            for (List<Board> level : levels) {
+                for (Board b : level) {
+                    lookups++;
+                    if (book.lookup(b) != null) {
+                        hits++;
+                    }
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%d lookups, %d hits, %.2f us per lookup%n", lookups, hits, elapsed / 1000.0 / lookups);
+    }
+}
@@ -0,0 +1,292 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * A Board used by the search. It carries a running 64-bit Zobrist key that is
+ * updated with a single XOR on every makeMove/undoMove instead of being
+ * recomputed from all 64 cells at every node.
+ *
+ * It also keeps the number of X and O pieces on each of the 76 lines, updated
+ * through the 4 or 7 lines of the cell played, with running totals of the open
+ * lines (lines without the other side's pieces) by piece count, their center
+ * pieces and the dead lines. Heuristic reads these instead of scanning every
+ * line.
+ */
+public class Position extends Board {
+    // set to true to check the running key against a full recompute after every update
+    private static final boolean VERIFY_HASH = false;
+    // likewise for the line counts
+    private static final boolean VERIFY_LINES = false;
+
+    private static final int LINES = Geometry.LINE_COUNT;
+
+    // fixed seed so keys (and anything persisted by key) are stable between runs
+    private static final long ZOBRIST_SEED = 0x9E3779B97F4A7C15L;
+
+    // flat key table indexed by (side << 6) | position, X = 0 and O = 1
+    static final long[] ZOBRIST = new long[2 * Coordinate.NCubed];
+
+    static {
+        SplittableRandom random = new SplittableRandom(ZOBRIST_SEED);
+        for (int i = 0; i < ZOBRIST.length; i++) {
+            ZOBRIST[i] = random.nextLong();
+        }
+    }
+
+    private long hash;
+
+    // side index X = 0 and O = 1 throughout
+    private byte[] lineCounts = new byte[2 * LINES];   // side * LINES + line
+    private byte[] lineCenters = new byte[2 * LINES];  // of those, pieces on Heuristic's center cells
+    private int[] openLines = new int[2 * 5];          // side * 5 + pieces
+    private int[] openCenters = new int[2];
+    private int deadLines;
+
+    // keys of the Symmetry.COUNT symmetric images, null unless tracked
+    private long[] symmetryHashes;
+    private int symmetryMaxPieces;
+
+    public Position() {
+    }
+
+    public Position(Board board) {
+        this.xPositions = board.xPositions;
+        this.oPositions = board.oPositions;
+        this.hash = computeHash(xPositions, oPositions);
+        recountLines();
+    }
+
+    public long hash() {
+        return hash;
+    }
+
+    /**
+     * Starts keeping the keys of all symmetric images up to date, for as long as
+     * the position has at most maxPieces pieces. Does nothing if it already has more.
+     */
+    public void trackSymmetry(int maxPieces) {
+        if (totalMoves() <= maxPieces) {
+            symmetryMaxPieces = maxPieces;
+            symmetryHashes = Symmetry.hashes(xPositions, oPositions);
+        }
+    }
+
+    /**
+     * True while the symmetric keys are valid, i.e. symmetry is tracked and the
+     * position is still within the piece limit.
+     */
+    public boolean hasSymmetryHashes() {
+        return symmetryHashes != null && totalMoves() <= symmetryMaxPieces;
+    }
+
+    public long[] symmetryHashes() {
+        return symmetryHashes;
+    }
+
+    public static Player sideToMove(Board board) {
+        return Bit.countOnes(board.xPositions) == Bit.countOnes(board.oPositions) ? Player.X : Player.O;
+    }
+
+    private static int side(Player player) {
+        return (player == Player.X) ? 0 : 1;
+    }
+
+    /**
+     * A line is complete exactly when it is open with four pieces, so this needs
+     * no line scan.
+     */
+    @Override
+    public boolean hasWon(Player player) {
+        return openLines[side(player) * 5 + 4] > 0;
+    }
+
+    /**
+     * Pieces of player on Geometry.LINES[line].
+     */
+    public int lineCount(Player player, int line) {
+        return lineCounts[side(player) * LINES + line];
+    }
+
+    /**
+     * Lines with this many of player's pieces and none of the opponent's.
+     */
+    public int openLines(Player player, int pieces) {
+        return openLines[side(player) * 5 + pieces];
+    }
+
+    /**
+     * Center pieces of player summed over player's open lines.
+     */
+    public int openCenters(Player player) {
+        return openCenters[side(player)];
+    }
+
+    /**
+     * Lines holding pieces of both sides.
+     */
+    public int deadLines() {
+        return deadLines;
+    }
+
+    public static int keyIndex(int position, Player player) {
+        return (player == Player.X) ? position : Coordinate.NCubed + position;
+    }
+
+    public static long computeHash(long xPositions, long oPositions) {
+        long h = 0L;
+        for (long bits = xPositions; bits != 0; bits &= bits - 1) {
+            h ^= ZOBRIST[Long.numberOfTrailingZeros(bits)];
+        }
+        for (long bits = oPositions; bits != 0; bits &= bits - 1) {
+            h ^= ZOBRIST[Coordinate.NCubed + Long.numberOfTrailingZeros(bits)];
+        }
+        return h;
+    }
+
+    @Override
+    public void set(int position, Player player) {
+        if (Bit.isSet(xPositions, position)) {
+            hash ^= ZOBRIST[position];
+        } else if (Bit.isSet(oPositions, position)) {
+            hash ^= ZOBRIST[Coordinate.NCubed + position];
+        }
+        super.set(position, player);
+        if (player != null) {
+            hash ^= ZOBRIST[keyIndex(position, player)];
+        }
+        if (symmetryHashes != null) {
+            symmetryHashes = Symmetry.hashes(xPositions, oPositions);
+        }
+        recountLines();
+        verify();
+    }
+
+    /**
+     * Places a piece on an empty cell. Only valid for empty cells, which is all the
+     * search ever asks for.
+     */
+    @Override
+    public void makeMove(int position, Player player) {
+        long mask = Bit.mask(position);
+        if (player == Player.X) {
+            xPositions |= mask;
+            hash ^= ZOBRIST[position];
+        } else {
+            oPositions |= mask;
+            hash ^= ZOBRIST[Coordinate.NCubed + position];
+        }
+        updateLines(position, side(player), 1);
+        // updated only below the limit, on both make and undo, so the keys stay valid there
+        if (symmetryHashes != null && totalMoves() <= symmetryMaxPieces) {
+            Symmetry.update(symmetryHashes, keyIndex(position, player));
+        }
+        verify();
+    }
+
+    @Override
+    public void undoMove(int position) {
+        long mask = Bit.mask(position);
+        if (symmetryHashes != null && totalMoves() <= symmetryMaxPieces) {
+            if ((xPositions & mask) != 0) {
+                Symmetry.update(symmetryHashes, position);
+            } else if ((oPositions & mask) != 0) {
+                Symmetry.update(symmetryHashes, Coordinate.NCubed + position);
+            }
+        }
+        if ((xPositions & mask) != 0) {
+            xPositions &= ~mask;
+            hash ^= ZOBRIST[position];
+            updateLines(position, 0, -1);
+        } else if ((oPositions & mask) != 0) {
+            oPositions &= ~mask;
+            hash ^= ZOBRIST[Coordinate.NCubed + position];
+            updateLines(position, 1, -1);
+        }
+        verify();
+    }
+
+    public Position copy() {
+        Position p = new Position();
+        p.xPositions = xPositions;
+        p.oPositions = oPositions;
+        p.hash = hash;
+        p.lineCounts = lineCounts.clone();
+        p.lineCenters = lineCenters.clone();
+        p.openLines = openLines.clone();
+        p.openCenters = openCenters.clone();
+        p.deadLines = deadLines;
+        if (symmetryHashes != null) {
+            p.symmetryHashes = symmetryHashes.clone();
+            p.symmetryMaxPieces = symmetryMaxPieces;
+        }
+        return p;
+    }
+
+    private void updateLines(int cell, int side, int delta) {
+        boolean center = Bit.isSet(Heuristic.CENTER_POSITIONS_MASK, cell);
+        for (int line : Geometry.CELL_LINE_INDEX[cell]) {
+            account(line, -1);
+            int i = side * LINES + line;
+            lineCounts[i] = (byte) (lineCounts[i] + delta);
+            if (center) {
+                lineCenters[i] = (byte) (lineCenters[i] + delta);
+            }
+            account(line, 1);
+        }
+    }
+
+    /**
+     * Adds (sign 1) or removes (sign -1) one line's share of the running totals.
+     */
+    private void account(int line, int sign) {
+        int x = lineCounts[line];
+        int o = lineCounts[LINES + line];
+        if (o == 0 && x > 0) {
+            openLines[x] += sign;
+            openCenters[0] += sign * lineCenters[line];
+        } else if (x == 0 && o > 0) {
+            openLines[5 + o] += sign;
+            openCenters[1] += sign * lineCenters[LINES + line];
+        } else if (x > 0) {
+            deadLines += sign;
+        }
+    }
+
+    private void recountLines() {
+        Arrays.fill(openLines, 0);
+        Arrays.fill(openCenters, 0);
+        deadLines = 0;
+        for (int line = 0; line < LINES; line++) {
+            long cells = Geometry.LINES[line];
+            lineCounts[line] = (byte) Bit.countOnes(cells & xPositions);
+            lineCounts[LINES + line] = (byte) Bit.countOnes(cells & oPositions);
+            lineCenters[line] = (byte) Bit.countOnes(cells & xPositions & Heuristic.CENTER_POSITIONS_MASK);
+            lineCenters[LINES + line] = (byte) Bit.countOnes(cells & oPositions & Heuristic.CENTER_POSITIONS_MASK);
+            account(line, 1);
+        }
+    }
+
+    private void verify() {
+        if (VERIFY_HASH && hash != computeHash(xPositions, oPositions)) {
+            throw new IllegalStateException("Zobrist key out of sync: " + Long.toHexString(hash) +
+                    " != " + Long.toHexString(computeHash(xPositions, oPositions)) + " for " + this);
+        }
+        if (VERIFY_HASH && hasSymmetryHashes() &&
+                !Arrays.equals(symmetryHashes, Symmetry.hashes(xPositions, oPositions))) {
+            throw new IllegalStateException("Symmetric keys out of sync for " + this);
+        }
+        if (VERIFY_LINES) {
+            Position fresh = new Position(this);
+            if (!Arrays.equals(lineCounts, fresh.lineCounts) || !Arrays.equals(lineCenters, fresh.lineCenters) ||
+                    !Arrays.equals(openLines, fresh.openLines) || !Arrays.equals(openCenters, fresh.openCenters) ||
+                    deadLines != fresh.deadLines) {
+                throw new IllegalStateException("Line counts out of sync for " + this);
+            }
+        }
+    }
+}
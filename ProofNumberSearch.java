@@ -0,0 +1,716 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Exact win/draw/loss solver built on proof-number search.
+ *
+ * A proof-number search answers one yes/no question: "can the target player force a
+ * win?". Nodes where the target moves are OR nodes and the others AND nodes; the
+ * proof number (pn) of a node is the least number of leaves that still have to be
+ * proven, the disproof number (dn) the least number that have to be disproven. A
+ * full result takes two questions: first whether the side to move wins, and if not,
+ * whether the opponent does. If neither can, the position is a draw.
+ *
+ * Two engines share the move generator and terminal detection:
+ *   solve()             PN2: a best-first tree in primitive arrays with a node cap.
+ *                       Solved subtrees are released to per-size free lists right
+ *                       away, and every expanded leaf is initialised by a small
+ *                       second-level PN search instead of plain mobility.
+ *   solveDepthFirst()   df-pn: the same search done depth first with thresholds,
+ *                       keeping pn/dn in a TranspositionTable, so memory stays fixed
+ *                       and the table can be shared or reused between solves.
+ *
+ * Instances are not thread safe.
+ */
+public class ProofNumberSearch {
+    public enum Value { WIN, DRAW, LOSS, UNKNOWN } // for the side to move
+
+    public static class Result {
+        public final Value value;
+        public final int bestMove;
+        public final long proofSize;
+        public final long nodes;
+        public final long millis;
+
+        Result(Value value, int bestMove, long proofSize, long nodes, long millis) {
+            this.value = value;
+            this.bestMove = bestMove;
+            this.proofSize = proofSize;
+            this.nodes = nodes;
+            this.millis = millis;
+        }
+
+        public double nodesPerSecond() {
+            return nodes * 1000.0 / Math.max(1, millis);
+        }
+
+        public String toJson() {
+            return "{\"value\": \"" + value + "\", \"bestMove\": " + bestMove +
+                    ", \"proofSize\": " + proofSize + ", \"nodes\": " + nodes +
+                    ", \"millis\": " + millis + ", \"nodesPerSecond\": " + Math.round(nodesPerSecond()) + "}";
+        }
+
+        @Override
+        public String toString() {
+            return value + (bestMove >= 0 ? " (best move " + bestMove + ")" : "") +
+                    ", proof size " + proofSize + ", " + nodes + " nodes in " + millis + " ms (" +
+                    Math.round(nodesPerSecond()) + " nodes/s)";
+        }
+    }
+
+    private static final int INF = 1 << 30;
+    private static final int DEFAULT_NODE_CAP = 2_000_000;
+    private static final int SECOND_LEVEL_CAP = 20_000;
+    private static final int MAX_PLY = Coordinate.NCubed + 1;
+
+    // status of a position for the question being asked
+    private static final int PROVEN = 0;
+    private static final int DISPROVEN = 1;
+    private static final int OPEN = 2;
+
+    // keys of the two df-pn entries for a position, per target side
+    private static final long[] PN_SALT = { 0x9FB21C651E98DF25L, 0xC2B2AE3D27D4EB4FL };
+    private static final long[] DN_SALT = { 0x165667B19E3779F9L, 0x27D4EB2F165667C5L };
+
+    /**
+     * Best-first tree in parallel arrays. Children of a node sit in one contiguous
+     * block; released blocks go on a free list for their size and are reused by the
+     * next expansion with the same number of moves.
+     */
+    private static final class Tree {
+        final int capacity;
+        final int[] parent;
+        final int[] firstChild;
+        final int[] pn;
+        final int[] dn;
+        final int[] size;
+        final byte[] move;
+        final byte[] childCount;
+        final int[] freeHead = new int[Coordinate.NCubed + 1];
+        final int[] path = new int[MAX_PLY];
+        int top;
+        int live;
+        int peak;
+
+        Tree(int capacity) {
+            this.capacity = capacity;
+            parent = new int[capacity];
+            firstChild = new int[capacity];
+            pn = new int[capacity];
+            dn = new int[capacity];
+            size = new int[capacity];
+            move = new byte[capacity];
+            childCount = new byte[capacity];
+        }
+
+        void reset() {
+            top = 0;
+            live = 0;
+            peak = 0;
+            Arrays.fill(freeHead, -1);
+        }
+
+        int allocate(int count) {
+            int block = freeHead[count];
+            if (block >= 0) {
+                freeHead[count] = firstChild[block];
+            } else if (top + count <= capacity) {
+                block = top;
+                top += count;
+            } else {
+                return -1;
+            }
+            live += count;
+            peak = Math.max(peak, live);
+            for (int i = block; i < block + count; i++) {
+                firstChild[i] = -1;
+                childCount[i] = 0;
+            }
+            return block;
+        }
+
+        void releaseChildren(int node) {
+            int block = firstChild[node];
+            if (block < 0) {
+                return;
+            }
+            int count = childCount[node];
+            for (int i = block; i < block + count; i++) {
+                releaseChildren(i);
+            }
+            firstChild[block] = freeHead[count];
+            freeHead[count] = block;
+            live -= count;
+            firstChild[node] = -1;
+            childCount[node] = 0;
+        }
+    }
+
+    private final int nodeCap;
+    private final TranspositionTable table;
+    private Tree tree;
+    private Tree secondLevel;
+    private final int[][] moveStack = new int[MAX_PLY][Coordinate.NCubed];
+    private final int[] scratchMoves = new int[Coordinate.NCubed];
+    private long nodes;
+    private long nodeLimit;
+    private boolean aborted;
+
+    public ProofNumberSearch() {
+        this(DEFAULT_NODE_CAP, new TranspositionTable(64));
+    }
+
+    /**
+     * Node counts are created nodes for PN2 (both levels) and expanded nodes for
+     * df-pn.
+     *
+     * @param nodeCap Node budget: tree size for PN2, expanded nodes for df-pn.
+     * @param table   Table for df-pn, may be shared with other solves.
+     */
+    public ProofNumberSearch(int nodeCap, TranspositionTable table) {
+        this.nodeCap = nodeCap;
+        this.table = table;
+    }
+
+    public static Player sideToMove(Board board) {
+        return Bit.countOnes(board.xPositions) == Bit.countOnes(board.oPositions) ? Player.X : Player.O;
+    }
+
+    /**
+     * Solves the position with PN2.
+     */
+    public Result solve(Board board) {
+        if (tree == null) {
+            tree = new Tree(nodeCap);
+            secondLevel = new Tree(SECOND_LEVEL_CAP);
+        }
+        return solve(board, false);
+    }
+
+    /**
+     * Solves the position with df-pn.
+     */
+    public Result solveDepthFirst(Board board) {
+        return solve(board, true);
+    }
+
+    private Result solve(Board board, boolean depthFirst) {
+        long start = System.currentTimeMillis();
+        Player toMove = sideToMove(board);
+        long x = board.xPositions;
+        long o = board.oPositions;
+        nodes = 0;
+        table.newSearch();
+
+        Value value;
+        int bestMove = -1;
+        long proofSize = 0;
+
+        int status = depthFirst ? dfpn(x, o, toMove, toMove) : pn2(x, o, toMove, toMove);
+        if (status == PROVEN) {
+            value = Value.WIN;
+            bestMove = depthFirst ? dfpnBestMove(x, o, toMove, toMove) : pn2BestMove(x, o, toMove, true);
+            proofSize = depthFirst ? dfpnProofSize(x, o, toMove, toMove) : tree.size[0];
+        } else if (status == OPEN) {
+            value = Value.UNKNOWN;
+        } else {
+            Player opponent = toMove.other();
+            status = depthFirst ? dfpn(x, o, toMove, opponent) : pn2(x, o, toMove, opponent);
+            if (status == PROVEN) {
+                value = Value.LOSS;
+                proofSize = depthFirst ? dfpnProofSize(x, o, toMove, opponent) : tree.size[0];
+            } else if (status == DISPROVEN) {
+                value = Value.DRAW;
+                bestMove = depthFirst ? dfpnBestMove(x, o, toMove, opponent) : pn2BestMove(x, o, toMove, false);
+                proofSize = depthFirst ? dfpnProofSize(x, o, toMove, opponent) : tree.size[0];
+            } else {
+                value = Value.UNKNOWN;
+            }
+        }
+        return new Result(value, bestMove, proofSize, nodes, System.currentTimeMillis() - start);
+    }
+
+    // ---------------------------------------------------------------- shared
+
+    /**
+     * Classifies a position that was not ended by the previous move, and fills the
+     * moves worth trying. An own open three wins at once; two opponent open threes
+     * lose; one must be blocked. A target with no line left free of opponent pieces
+     * can no longer win.
+     *
+     * @return PROVEN, DISPROVEN or OPEN. For OPEN, count[0] holds the number of moves.
+     */
+    private static int status(long x, long o, Player mover, Player target, int[] moves, int[] count) {
+        long own = (mover == Player.X) ? x : o;
+        long opp = (mover == Player.X) ? o : x;
+        long occupied = x | o;
+        if (MoveOrdering.threatCells(own, occupied) != 0) {
+            return mover == target ? PROVEN : DISPROVEN;
+        }
+        long blocks = MoveOrdering.threatCells(opp, occupied);
+        if (Long.bitCount(blocks) >= 2) {
+            return mover == target ? DISPROVEN : PROVEN;
+        }
+        long targetPieces = (target == Player.X) ? x : o;
+        long defender = occupied & ~targetPieces;
+        boolean alive = false;
+        for (long line : Geometry.LINES) {
+            if ((line & defender) == 0) {
+                alive = true;
+                break;
+            }
+        }
+        if (!alive) {
+            return DISPROVEN;
+        }
+
+        long candidates = blocks != 0 ? blocks : ~occupied;
+        int n = 0;
+        for (long bits = candidates; bits != 0; bits &= bits - 1) {
+            moves[n++] = Long.numberOfTrailingZeros(bits);
+        }
+        count[0] = n;
+        return n == 0 ? DISPROVEN : OPEN;
+    }
+
+    private static int add(int a, int b) {
+        return (int) Math.min(INF, (long) a + b);
+    }
+
+    // ---------------------------------------------------------------- PN2
+
+    private final int[] countOut = new int[1];
+
+    private int pn2(long x, long o, Player toMove, Player target) {
+        return pnSearch(tree, x, o, toMove, target, nodeCap);
+    }
+
+    /**
+     * Best-first proof-number search from (x, o) in the given tree.
+     *
+     * @return PROVEN, DISPROVEN, or OPEN when the node budget ran out.
+     */
+    private int pnSearch(Tree t, long x, long o, Player toMove, Player target, int limit) {
+        t.reset();
+        int root = t.allocate(1);
+        t.parent[root] = -1;
+        initNode(t, root, x, o, toMove, target, -1);
+
+        boolean rootIsOr = toMove == target;
+        int[] path = t.path;
+        while (t.pn[root] != 0 && t.dn[root] != 0) {
+            if (t.live >= limit) {
+                return OPEN;
+            }
+            // descend to the most-proving leaf
+            int node = root;
+            int depth = 0;
+            long cx = x;
+            long co = o;
+            Player p = toMove;
+            path[0] = root;
+            while (t.firstChild[node] >= 0) {
+                boolean or = p == target;
+                int block = t.firstChild[node];
+                int best = block;
+                for (int c = block + 1; c < block + t.childCount[node]; c++) {
+                    if (or ? t.pn[c] < t.pn[best] : t.dn[c] < t.dn[best]) {
+                        best = c;
+                    }
+                }
+                if (p == Player.X) {
+                    cx |= 1L << t.move[best];
+                } else {
+                    co |= 1L << t.move[best];
+                }
+                p = p.other();
+                node = best;
+                path[++depth] = node;
+            }
+
+            if (!expand(t, node, cx, co, p, target, limit)) {
+                return OPEN;
+            }
+
+            for (int d = depth; d >= 0; d--) {
+                boolean or = (d % 2 == 0) == rootIsOr;
+                int n = path[d];
+                int oldPn = t.pn[n];
+                int oldDn = t.dn[n];
+                update(t, n, or, n != root);
+                if (t.pn[n] == oldPn && t.dn[n] == oldDn && d < depth) {
+                    break;
+                }
+            }
+        }
+        return t.pn[root] == 0 ? PROVEN : DISPROVEN;
+    }
+
+    /**
+     * Sets pn/dn (and the solution size) of a new node from its position. The move
+     * that led here is checked for a completed line first.
+     */
+    private void initNode(Tree t, int node, long x, long o, Player mover, Player target, int lastMove) {
+        nodes++;
+        t.size[node] = 1;
+        if (lastMove >= 0) {
+            Player previous = mover.other();
+            if (Geometry.completesLine(previous == Player.X ? x : o, lastMove)) {
+                setSolved(t, node, previous == target);
+                return;
+            }
+        }
+        int status = status(x, o, mover, target, scratchMoves, countOut);
+        if (status != OPEN) {
+            setSolved(t, node, status == PROVEN);
+        } else if (mover == target) {
+            t.pn[node] = 1;
+            t.dn[node] = countOut[0];
+        } else {
+            t.pn[node] = countOut[0];
+            t.dn[node] = 1;
+        }
+    }
+
+    private static void setSolved(Tree t, int node, boolean proven) {
+        t.pn[node] = proven ? 0 : INF;
+        t.dn[node] = proven ? INF : 0;
+    }
+
+    /**
+     * Creates the children of a leaf. In the first-level tree the children take
+     * their pn/dn from a second-level search of the leaf, sized with the tree.
+     */
+    private boolean expand(Tree t, int node, long x, long o, Player mover, Player target, int limit) {
+        boolean useSecondLevel = t == tree;
+        if (useSecondLevel) {
+            int secondLimit = Math.min(SECOND_LEVEL_CAP, Math.max(64, t.live));
+            if (pnSearch(secondLevel, x, o, mover, target, secondLimit) != OPEN && node != 0) {
+                // the second level settled the leaf on its own; the root keeps its
+                // children so the best move can be read off
+                t.pn[node] = secondLevel.pn[0];
+                t.dn[node] = secondLevel.dn[0];
+                t.size[node] = secondLevel.size[0];
+                return true;
+            }
+            if (secondLevel.firstChild[0] < 0) {
+                useSecondLevel = false;
+            }
+        }
+
+        // after the second level, which uses the same move buffers
+        int[] moves = moveStack[1];
+        status(x, o, mover, target, moves, countOut);
+        int count = countOut[0];
+
+        int block = t.allocate(count);
+        if (block < 0) {
+            return false;
+        }
+        t.firstChild[node] = block;
+        t.childCount[node] = (byte) count;
+        int secondBlock = useSecondLevel ? secondLevel.firstChild[0] : -1;
+        for (int i = 0; i < count; i++) {
+            int c = block + i;
+            t.parent[c] = node;
+            t.move[c] = (byte) moves[i];
+            if (useSecondLevel) {
+                t.pn[c] = secondLevel.pn[secondBlock + i];
+                t.dn[c] = secondLevel.dn[secondBlock + i];
+                t.size[c] = secondLevel.size[secondBlock + i];
+            } else {
+                long mask = 1L << moves[i];
+                long cx = mover == Player.X ? x | mask : x;
+                long co = mover == Player.X ? o : o | mask;
+                initNode(t, c, cx, co, mover.other(), target, moves[i]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Recomputes pn/dn of an interior node from its children. Once the node is
+     * solved its solution size is recorded and, except at the root, its subtree is
+     * released.
+     */
+    private static void update(Tree t, int node, boolean or, boolean release) {
+        int block = t.firstChild[node];
+        if (block < 0) {
+            return;
+        }
+        int end = block + t.childCount[node];
+        int min = INF;
+        int sum = 0;
+        for (int c = block; c < end; c++) {
+            int minSide = or ? t.pn[c] : t.dn[c];
+            int sumSide = or ? t.dn[c] : t.pn[c];
+            min = Math.min(min, minSide);
+            sum = add(sum, sumSide);
+        }
+        t.pn[node] = or ? min : sum;
+        t.dn[node] = or ? sum : min;
+
+        if (min == 0) {
+            // one child settles it: the smallest solved one
+            int best = INF;
+            for (int c = block; c < end; c++) {
+                if ((or ? t.pn[c] : t.dn[c]) == 0) {
+                    best = Math.min(best, t.size[c]);
+                }
+            }
+            t.size[node] = add(1, best);
+        } else if (sum == 0) {
+            // every child was needed
+            int total = 1;
+            for (int c = block; c < end; c++) {
+                total = add(total, t.size[c]);
+            }
+            t.size[node] = total;
+        } else {
+            return;
+        }
+        if (release) {
+            t.releaseChildren(node);
+        }
+    }
+
+    private int pn2BestMove(long x, long o, Player toMove, boolean proven) {
+        int block = tree.firstChild[0];
+        if (block < 0) {
+            return staticMove(x, o, toMove);
+        }
+        for (int c = block; c < block + tree.childCount[0]; c++) {
+            if ((proven ? tree.pn[c] : tree.dn[c]) == 0) {
+                return tree.move[c];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The move for a position decided without search: an immediate win, else the
+     * block of the opponent's open three, else -1.
+     */
+    private static int staticMove(long x, long o, Player toMove) {
+        long own = (toMove == Player.X) ? x : o;
+        long occupied = x | o;
+        long cells = MoveOrdering.threatCells(own, occupied);
+        if (cells == 0) {
+            cells = MoveOrdering.threatCells(occupied & ~own, occupied);
+        }
+        return cells == 0 ? -1 : Long.numberOfTrailingZeros(cells);
+    }
+
+    // ---------------------------------------------------------------- df-pn
+
+    // child values for the node being searched, per ply
+    private final int[][] childPhi = new int[MAX_PLY][Coordinate.NCubed];
+    private final int[][] childDelta = new int[MAX_PLY][Coordinate.NCubed];
+
+    private int dfpn(long x, long o, Player toMove, Player target) {
+        nodeLimit = nodes + nodeCap;
+        aborted = false;
+        long key = Position.computeHash(x, o);
+        int[] moves = moveStack[0];
+        int status = status(x, o, toMove, target, moves, countOut);
+        if (status != OPEN) {
+            return status;
+        }
+        mid(x, o, key, toMove, target, INF, INF, 0);
+        if (aborted) {
+            return OPEN;
+        }
+        long pn = lookupPn(key, target);
+        long dn = lookupDn(key, target);
+        if (pn == 0) {
+            return PROVEN;
+        }
+        return dn == 0 ? DISPROVEN : OPEN;
+    }
+
+    /**
+     * Multiple iterative deepening at one node: keeps searching the most-proving
+     * child until the node's own phi or delta reaches its threshold. phi/delta are
+     * pn/dn seen from the side to move (pn/dn at OR nodes, dn/pn at AND nodes).
+     */
+    private void mid(long x, long o, long key, Player mover, Player target, int thPhi, int thDelta, int ply) {
+        nodes++;
+        if (nodes >= nodeLimit) {
+            aborted = true;
+            return;
+        }
+        int[] moves = moveStack[ply];
+        status(x, o, mover, target, moves, countOut);
+        int count = countOut[0];
+        int[] phi = childPhi[ply];
+        int[] delta = childDelta[ply];
+        boolean or = mover == target;
+        Player next = mover.other();
+
+        while (true) {
+            // children are seen from the opponent, so their phi/delta swap roles
+            int nodePhi = INF;
+            int nodeDelta = 0;
+            int best = -1;
+            int secondDelta = INF;
+            for (int i = 0; i < count; i++) {
+                childValues(x, o, key, mover, target, moves[i], ply, i);
+                if (delta[i] < nodePhi) {
+                    secondDelta = nodePhi;
+                    nodePhi = delta[i];
+                    best = i;
+                } else if (delta[i] < secondDelta) {
+                    secondDelta = delta[i];
+                }
+                nodeDelta = add(nodeDelta, phi[i]);
+            }
+
+            if (nodePhi >= thPhi || nodeDelta >= thDelta || aborted) {
+                int bestMove = best >= 0 ? moves[best] : -1;
+                store(key, target, or ? nodePhi : nodeDelta, or ? nodeDelta : nodePhi, x | o, bestMove);
+                return;
+            }
+
+            int m = moves[best];
+            long mask = 1L << m;
+            long cx = mover == Player.X ? x | mask : x;
+            long co = mover == Player.X ? o : o | mask;
+            long childKey = key ^ Position.ZOBRIST[Position.keyIndex(m, mover)];
+            int childThPhi = add(thDelta, phi[best]) - nodeDelta;
+            int childThDelta = Math.min(thPhi, add(secondDelta, 1));
+            mid(cx, co, childKey, next, target, childThPhi, childThDelta, ply + 1);
+        }
+    }
+
+    /**
+     * Fills childPhi/childDelta[ply][i] for one child, from the table or from a
+     * static look at the child position.
+     */
+    private void childValues(long x, long o, long key, Player mover, Player target, int m, int ply, int i) {
+        long mask = 1L << m;
+        long cx = mover == Player.X ? x | mask : x;
+        long co = mover == Player.X ? o : o | mask;
+        Player next = mover.other();
+        boolean childOr = next == target;
+        int pn;
+        int dn;
+
+        long childKey = key ^ Position.ZOBRIST[Position.keyIndex(m, mover)];
+        long storedPn = lookupPn(childKey, target);
+        long storedDn = lookupDn(childKey, target);
+        if (storedPn >= 0 && storedDn >= 0) {
+            pn = (int) storedPn;
+            dn = (int) storedDn;
+        } else {
+            int status;
+            if (Geometry.completesLine(mover == Player.X ? cx : co, m)) {
+                status = mover == target ? PROVEN : DISPROVEN;
+            } else {
+                status = status(cx, co, next, target, scratchMoves, countOut);
+            }
+            if (status == PROVEN) {
+                pn = 0;
+                dn = INF;
+            } else if (status == DISPROVEN) {
+                pn = INF;
+                dn = 0;
+            } else {
+                pn = childOr ? 1 : countOut[0];
+                dn = childOr ? countOut[0] : 1;
+            }
+        }
+        childPhi[ply][i] = childOr ? pn : dn;
+        childDelta[ply][i] = childOr ? dn : pn;
+    }
+
+    private void store(long key, Player target, int pn, int dn, long occupied, int move) {
+        int empties = Coordinate.NCubed - Long.bitCount(occupied);
+        int side = target.ordinal();
+        table.store(key ^ PN_SALT[side], pn, empties, TranspositionTable.EXACT, move);
+        table.store(key ^ DN_SALT[side], dn, empties, TranspositionTable.EXACT, move);
+    }
+
+    /**
+     * @return The stored proof number, or -1 if the position is not in the table.
+     */
+    private long lookupPn(long key, Player target) {
+        long data = table.probe(key ^ PN_SALT[target.ordinal()]);
+        return data == 0 ? -1 : TranspositionTable.value(data);
+    }
+
+    private long lookupDn(long key, Player target) {
+        long data = table.probe(key ^ DN_SALT[target.ordinal()]);
+        return data == 0 ? -1 : TranspositionTable.value(data);
+    }
+
+    private int dfpnBestMove(long x, long o, Player toMove, Player target) {
+        long key = Position.computeHash(x, o);
+        int[] moves = moveStack[0];
+        if (status(x, o, toMove, target, moves, countOut) != OPEN) {
+            return staticMove(x, o, toMove);
+        }
+        int count = countOut[0];
+        for (int i = 0; i < count; i++) {
+            childValues(x, o, key, toMove, target, moves[i], 0, i);
+            if (childDelta[0][i] == 0) {
+                return moves[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Counts the nodes of the solution tree left in the table: one settling child at
+     * nodes the side to move decides, every child at the others. Entries that were
+     * overwritten count as a single node, so this is a lower bound.
+     */
+    private long dfpnProofSize(long x, long o, Player toMove, Player target) {
+        return proofSize(x, o, Position.computeHash(x, o), toMove, target, 0, new HashSet<>());
+    }
+
+    private long proofSize(long x, long o, long key, Player mover, Player target, int ply, Set<Long> seen) {
+        if (!seen.add(key) || ply >= MAX_PLY - 1) {
+            return 0;
+        }
+        int[] moves = moveStack[ply];
+        if (status(x, o, mover, target, moves, countOut) != OPEN) {
+            return 1;
+        }
+        int count = countOut[0];
+        boolean settledByMover = false;
+        for (int i = 0; i < count; i++) {
+            childValues(x, o, key, mover, target, moves[i], ply, i);
+            if (childDelta[ply][i] == 0) {
+                settledByMover = true;
+            }
+        }
+        long total = 1;
+        int[] children = Arrays.copyOf(moves, count);
+        int[] deltas = Arrays.copyOf(childDelta[ply], count);
+        int[] phis = Arrays.copyOf(childPhi[ply], count);
+        for (int i = 0; i < count; i++) {
+            if (settledByMover ? deltas[i] != 0 : phis[i] != 0) {
+                continue;
+            }
+            long mask = 1L << children[i];
+            long cx = mover == Player.X ? x | mask : x;
+            long co = mover == Player.X ? o : o | mask;
+            long childKey = key ^ Position.ZOBRIST[Position.keyIndex(children[i], mover)];
+            if (Geometry.completesLine(mover == Player.X ? cx : co, children[i])) {
+                total++;
+            } else {
+                total += proofSize(cx, co, childKey, mover.other(), target, ply + 1, seen);
+            }
+            if (settledByMover) {
+                break;
+            }
+        }
+        return total;
+    }
+}
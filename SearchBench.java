@@ -0,0 +1,1442 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Search benchmarks and consistency checks over fixed sets of positions.
+ *
+ * Usage: java SearchBench <mode> [depth]
+ *   pvs       node counts for plain alpha-beta vs PVS vs PVS with aspiration windows
+ *   smp       Lazy SMP time-to-depth for 1, 2, 4, 8 and 16 threads
+ *   parallel  root split vs Lazy SMP vs YBWC on the same positions, YBWC reproducibility, and
+ *             YBWC with null moves splitting at every node against never splitting
+ *   vcf       threat-space search on generated tactical positions vs the main search at depth
+ *   symmetry  evaluate() on every symmetric image of positions from random games, then node
+ *             counts without and with symmetry-canonical keys, openings and middlegame
+ *   endgame   exact endgame solver vs the main search at depth, by number of empty cells
+ *   executor  per-search startup cost, and concurrent games with and without fair thread shares
+ *   quiescence  nodes, time and tactical blunders at depths 1..depth, without and with quiescence
+ *   pruning   null move, LMR and futility one at a time and together: nodes at depth, and
+ *             depth reached and blunders at 500 ms per move
+ *   alloc     heap bytes allocated per search node by the main search on one thread
+ *   multipv   cost of analyze() with K = 1, 3 and 5 against chooseBestMove() at depth
+ *   versus    MCTS against alpha-beta at the same time per move (depth = ms per move, then games)
+ *   eval      Heuristic.evaluate from a Position's line counts against the line scan, on
+ *             positions from random games (depth = games): identical scores and time
+ *   hash      Position's running Zobrist key, symmetric keys and line counts against a
+ *             recomputation after every makeMove and undoMove of random games (depth = games)
+ *   tt        TranspositionTable probes against what was stored, on one thread and on four
+ *             (depth = table size in MB)
+ *   pn        PN2 and df-pn against the exact endgame solver one move after quiet positions
+ *             with 11 empty cells (depth = quiet positions)
+ *   terminal  win detection by scanning Line objects, by scanning Geometry.LINES, through
+ *             the last move only, and from Position's line counts (depth = games)
+ *   simd      line counting and evaluate(Board) with the scalar and the vector LineCounter,
+ *             on positions from random games (depth = games); run with
+ *             --add-modules jdk.incubator.vector after compiling simd/ the same way
+ *   evalcache evaluator calls, cache hits and time at depth without and with the eval cache
+ *   threats   ThreatMap against simulating every empty cell with a rescan of all lines, on
+ *             positions from random games (depth = games): identical maps and time
+ *   deterministic  node-budgeted searches run twice, and with more threads configured, and
+ *             their checksums compared (depth = node budget in thousands)
+ *
+ * Modes that compute the same thing two ways (parallel, symmetry, eval, hash, tt, pn,
+ * terminal, simd, threats, deterministic) exit with status 1 if any check fails.
+ */
+public class SearchBench {
+
+    // early positions, most of them still symmetric
+    static final String[] OPENINGS = {
+            opening(0, 63),
+            opening(21, 42),
+            opening(0, 21),
+            opening(1, 62),
+            opening(5, 10),
+            opening(0, 63, 21),
+            opening(21, 42, 0, 63),
+            opening(22, 41, 0),
+    };
+
+    // quiet middlegame positions (no open threes) so every search reaches the main loop
+    static final String[] POSITIONS = {
+            ".........O..........O....................XX...X.O...............",
+            "X.............O...................X.......OO.XO..........X......",
+            "..O....X.....O...O....O.......X.........X...X.........X...O.....",
+            "..O..X.O..X..XO..X..X..........O..O.....O...X...................",
+            "......................................X.OX.........O...O..X.....",
+            "......X......O.............O..................OX.....XX...O.....",
+            ".....O.X.......O.X..O.X....................O....X.O.......X.....",
+            "X........X....X..O.O.O...X.....O...........O...X.X............O.",
+            ".....X....O.......X....O....X.................................O.",
+            "................X...O.....O...............O.....X.O........XX...",
+    };
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private static int failures;
+
+    public static void main(String[] args) {
+        String mode = args.length > 0 ? args[0] : "pvs";
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        switch (mode) {
+            case "pvs":
+                benchPvs(depth);
+                break;
+            case "smp":
+                benchSmp(depth);
+                break;
+            case "parallel":
+                benchParallel(depth);
+                break;
+            case "vcf":
+                benchVcf(depth);
+                break;
+            case "symmetry":
+                benchSymmetry(depth);
+                break;
+            case "endgame":
+                benchEndgame(depth);
+                break;
+            case "executor":
+                benchExecutor(depth);
+                break;
+            case "quiescence":
+                benchQuiescence(depth);
+                break;
+            case "pruning":
+                benchPruning(depth);
+                break;
+            case "alloc":
+                benchAlloc(depth);
+                break;
+            case "multipv":
+                benchMultiPv(depth);
+                break;
+            case "versus":
+                benchVersus(depth, args.length > 2 ? Integer.parseInt(args[2]) : 2 * OPENINGS.length);
+                break;
+            case "eval":
+                benchEval(depth);
+                break;
+            case "hash":
+                benchHash(depth);
+                break;
+            case "tt":
+                benchTt(depth);
+                break;
+            case "pn":
+                benchPn(depth);
+                break;
+            case "terminal":
+                benchTerminal(depth);
+                break;
+            case "simd":
+                benchSimd(depth);
+                break;
+            case "evalcache":
+                benchEvalCache(depth);
+                break;
+            case "threats":
+                benchThreats(depth);
+                break;
+            case "deterministic":
+                benchDeterministic(depth * 1000L);
+                break;
+            default:
+                System.out.println("Unknown mode: " + mode);
+                System.exit(2);
+        }
+        if (failures > 0) {
+            System.out.println(failures + " check(s) FAILED");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Records the outcome of a consistency check; main exits with status 1 after
+     * the mode if any failed.
+     */
+    static boolean check(boolean ok, String what) {
+        if (!ok) {
+            failures++;
+            System.out.println("FAILED: " + what);
+        }
+        return ok;
+    }
+
+    /**
+     * A board string with the given cells played alternately by X and O.
+     */
+    static String opening(int... cells) {
+        Board board = new Board();
+        Player p = Player.X;
+        for (int cell : cells) {
+            board.makeMove(cell, p);
+            p = p.other();
+        }
+        return board.toString();
+    }
+
+    static Player sideToMove(Board board) {
+        return Bit.countOnes(board.xPositions) == Bit.countOnes(board.oPositions) ? Player.X : Player.O;
+    }
+
+    static List<Board> boards(String... positions) {
+        List<Board> boards = new ArrayList<>();
+        for (String s : positions) {
+            boards.add(Board.valueOf(s));
+        }
+        return boards;
+    }
+
+    /**
+     * The main search alone on one thread: no book, threat search, endgame solver
+     * or pondering, so nodes and time depend on the search only.
+     */
+    static EngineConfig benchConfig() {
+        EngineConfig config = new EngineConfig();
+        config.THREAT_SEARCH = false;
+        config.ENDGAME_SOLVER = false;
+        config.OPENING_BOOK = null;
+        config.PONDER = false;
+        config.PARALLEL = EngineConfig.ParallelStrategy.LAZY_SMP;
+        config.SEARCH_THREADS = 1;
+        return config;
+    }
+
+    /**
+     * What one pass of searchAll() found, per position and in total.
+     */
+    static class Run {
+        final int[] moves;
+        final long[] scores;
+        final long[] nodes;
+        final long[] nanos;
+        final long[] checksums;
+        long evaluations;
+        long evalCacheHits;
+        long depths;
+        long allocatedBytes;
+
+        Run(int positions) {
+            moves = new int[positions];
+            scores = new long[positions];
+            nodes = new long[positions];
+            nanos = new long[positions];
+            checksums = new long[positions];
+        }
+
+        long nodes() {
+            return Arrays.stream(nodes).sum();
+        }
+
+        long elapsedMs() {
+            return Arrays.stream(nanos).sum() / 1_000_000;
+        }
+
+        String moves() {
+            StringBuilder s = new StringBuilder();
+            for (int move : moves) {
+                s.append(s.length() > 0 ? " " : "").append(move);
+            }
+            return s.toString();
+        }
+
+        // equal for two runs that chose the same moves with the same scores
+        long signature() {
+            return 31L * Arrays.hashCode(moves) + Arrays.hashCode(scores);
+        }
+    }
+
+    interface Search {
+        int run(AIPlayer ai, Board board);
+    }
+
+    static Run searchAll(EngineConfig config, int depth, List<Board> boards) {
+        return searchAll(config, depth, boards, AIPlayer::chooseBestMove);
+    }
+
+    /**
+     * The loop every search benchmark shares: a fresh engine per position, searching
+     * to a fixed depth or, with depth 0, to the config's own time or node limit.
+     * Time and allocated bytes are measured around the search only, on the calling
+     * thread.
+     */
+    static Run searchAll(EngineConfig config, int depth, List<Board> boards, Search search) {
+        Run run = new Run(boards.size());
+        for (int i = 0; i < boards.size(); i++) {
+            Board board = boards.get(i);
+            Player toMove = sideToMove(board);
+            AIPlayer ai = depth > 0 ? new AIPlayer(toMove, depth, config) : new AIPlayer(toMove, new Weights(true), config);
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            run.moves[i] = search.run(ai, board);
+            run.nanos[i] = System.nanoTime() - start;
+            run.allocatedBytes += allocatedBytes() - bytes;
+            run.scores[i] = ai.getLastScore();
+            run.nodes[i] = ai.getNodeCount();
+            run.checksums[i] = ai.getSearchChecksum();
+            run.evaluations += ai.getEvaluationCount();
+            run.evalCacheHits += ai.getEvalCacheHits();
+            run.depths += ai.getLastDepth();
+        }
+        return run;
+    }
+
+    static long allocatedBytes() {
+        return THREADS instanceof com.sun.management.ThreadMXBean counters ? counters.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    static void print(String label, int depth, Run run) {
+        System.out.printf("%-24s depth %d  nodes %10d  time %7d ms  moves %s%n",
+                label, depth, run.nodes(), run.elapsedMs(), run.moves());
+    }
+
+    /**
+     * Searches every position to a fixed depth with a fresh engine and prints the
+     * total node count and time.
+     */
+    static Run runFixedDepth(String label, EngineConfig config, int depth) {
+        return runFixedDepth(label, config, depth, POSITIONS);
+    }
+
+    static Run runFixedDepth(String label, EngineConfig config, int depth, String[] positions) {
+        Run run = searchAll(config, depth, boards(positions));
+        print(label, depth, run);
+        return run;
+    }
+
+    static void benchPvs(int depth) {
+        Map<String, EngineConfig> configs = new LinkedHashMap<>();
+
+        EngineConfig alphaBeta = new EngineConfig();
+        alphaBeta.PVS = false;
+        alphaBeta.ASPIRATION = false;
+        configs.put("alpha-beta", alphaBeta);
+
+        EngineConfig pvs = new EngineConfig();
+        pvs.ASPIRATION = false;
+        configs.put("pvs", pvs);
+
+        configs.put("pvs+aspiration", new EngineConfig());
+
+        long baseline = -1;
+        for (Map.Entry<String, EngineConfig> e : configs.entrySet()) {
+            long nodes = runFixedDepth(e.getKey(), e.getValue(), depth).nodes();
+            if (baseline < 0) {
+                baseline = nodes;
+            } else {
+                System.out.printf("%-24s node reduction vs alpha-beta: %.1f%%%n", "",
+                        100.0 * (baseline - nodes) / baseline);
+            }
+        }
+    }
+
+    static void benchSmp(int depth) {
+        System.out.println("Lazy SMP scaling on " + Runtime.getRuntime().availableProcessors() + " cores");
+        long baseline = -1;
+        for (int threads : new int[] { 1, 2, 4, 8, 16 }) {
+            EngineConfig config = new EngineConfig();
+            config.PARALLEL = EngineConfig.ParallelStrategy.LAZY_SMP;
+            config.SEARCH_THREADS = threads;
+            long elapsedMs = runFixedDepth(threads + " thread(s)", config, depth).elapsedMs();
+            if (baseline < 0) {
+                baseline = elapsedMs;
+            }
+            System.out.printf("%-24s time-to-depth speedup: %.2fx%n", "",
+                    (double) baseline / Math.max(1, elapsedMs));
+        }
+    }
+
+    static void benchParallel(int depth) {
+        for (EngineConfig.ParallelStrategy strategy : EngineConfig.ParallelStrategy.values()) {
+            EngineConfig config = new EngineConfig();
+            config.PARALLEL = strategy;
+            runFixedDepth(strategy.toString(), config, depth);
+        }
+
+        EngineConfig config = new EngineConfig();
+        config.PARALLEL = EngineConfig.ParallelStrategy.YBWC;
+        long first = runFixedDepth("YBWC (repeat 1)", config, depth).signature();
+        long second = runFixedDepth("YBWC (repeat 2)", config, depth).signature();
+        if (check(first == second, "YBWC repeats chose different moves or scores")) {
+            System.out.println("YBWC reproducible: moves and scores agree");
+        }
+
+        // split workers below a null move must keep its key and its verification
+        // state, so splitting at every node gives what never splitting gives
+        EngineConfig nullMove = new EngineConfig();
+        nullMove.PARALLEL = EngineConfig.ParallelStrategy.YBWC;
+        nullMove.NULL_MOVE = true;
+        nullMove.NULL_MOVE_VERIFY = true;
+        nullMove.LMR = false; // split siblings are never reduced
+        nullMove.FUTILITY = false;
+        nullMove.OPENING_BOOK = null;
+        nullMove.YBWC_MIN_SPLIT_DEPTH = Integer.MAX_VALUE;
+        long serial = runFixedDepth("YBWC null move, no split", nullMove, depth).signature();
+        nullMove.YBWC_MIN_SPLIT_DEPTH = 1;
+        long split = runFixedDepth("YBWC null move, split", nullMove, depth).signature();
+        if (check(serial == split, "YBWC with null moves differs between split and unsplit")) {
+            System.out.println("YBWC with null moves: split and unsplit agree");
+        }
+    }
+
+    /**
+     * Random positions (fixed seed) with no open three for either side where the
+     * side to move has a threat sequence of at least 9 plies.
+     */
+    static List<Board> tacticalPositions(int count) {
+        SplittableRandom random = new SplittableRandom(7);
+        ThreatSearch vcf = new ThreatSearch();
+        List<Board> found = new ArrayList<>();
+        while (found.size() < count) {
+            Board board = new Board();
+            int pieces = 12 + random.nextInt(10);
+            Player p = Player.X;
+            for (int i = 0; i < pieces; i++) {
+                int cell;
+                do {
+                    cell = random.nextInt(Coordinate.NCubed);
+                } while (board.get(cell) != null);
+                board.makeMove(cell, p);
+                p = p.other();
+            }
+            long occupied = board.xPositions | board.oPositions;
+            if (MoveOrdering.threatCells(board.xPositions, occupied) != 0 ||
+                    MoveOrdering.threatCells(board.oPositions, occupied) != 0) {
+                continue;
+            }
+            ThreatSearch.Result r = vcf.findWin(board, sideToMove(board));
+            if (r != null && r.plies >= 9) {
+                found.add(board);
+            }
+        }
+        return found;
+    }
+
+    static void benchVcf(int depth) {
+        ThreatSearch vcf = new ThreatSearch();
+        EngineConfig config = new EngineConfig();
+        config.THREAT_SEARCH = false;
+        List<Board> positions = tacticalPositions(10);
+        Run run = searchAll(config, depth, positions);
+        int seen = 0;
+        for (int i = 0; i < positions.size(); i++) {
+            Board board = positions.get(i);
+            ThreatSearch.Result r = vcf.findWin(board, sideToMove(board));
+            boolean searchSeesWin = run.scores[i] >= AIPlayer.WIN_SCORE;
+            if (searchSeesWin) {
+                seen++;
+            }
+            System.out.printf("%s  vcf: %2d plies %7d nodes %6d us  |  search depth %d: %s in %d ms%n",
+                    board.toString().replace("\n", ""), r.plies, r.nodes, r.micros, depth,
+                    searchSeesWin ? "win" : "no win", run.nanos[i] / 1_000_000);
+        }
+        System.out.println("Main search saw the win in " + seen + "/" + positions.size() + " positions");
+    }
+
+    static void benchSymmetry(int depth) {
+        // canonical keys and symmetric move pruning are only sound if every image
+        // of a position evaluates the same as the position itself
+        Weights w = new Weights(true);
+        List<Position> positions = randomGames(20, 24);
+        int mismatches = 0;
+        for (Position position : positions) {
+            for (int s = 0; s < Symmetry.COUNT; s++) {
+                Board image = new Board();
+                image.xPositions = Symmetry.transform(s, position.xPositions);
+                image.oPositions = Symmetry.transform(s, position.oPositions);
+                Position imagePosition = new Position(image);
+                for (Player side : Player.values()) {
+                    if (Heuristic.evaluate(imagePosition, side, w) != Heuristic.evaluate(position, side, w)
+                            || Heuristic.evaluate(image, side, w) != Heuristic.evaluate(position, side, w)) {
+                        mismatches++;
+                    }
+                }
+            }
+        }
+        System.out.println(positions.size() + " positions under " + Symmetry.COUNT + " symmetries, "
+                + mismatches + " images evaluate differently");
+        check(mismatches == 0, "the evaluator is not invariant under the search's symmetries");
+
+        String[][] sets = { OPENINGS, POSITIONS };
+        String[] names = { "opening", "middlegame" };
+        for (int i = 0; i < sets.length; i++) {
+            EngineConfig plain = new EngineConfig();
+            plain.SYMMETRY = false;
+            Run base = runFixedDepth(names[i] + " plain", plain, depth, sets[i]);
+            Run sym = runFixedDepth(names[i] + " symmetry", new EngineConfig(), depth, sets[i]);
+            System.out.printf("%-24s node reduction: %.1f%%, time %+.1f%%%n", "",
+                    100.0 * (base.nodes() - sym.nodes()) / base.nodes(),
+                    100.0 * (sym.elapsedMs() - base.elapsedMs()) / Math.max(1, base.elapsedMs()));
+        }
+    }
+
+    /**
+     * Positions (fixed seed) from random games in which every open three is blocked,
+     * stopped at the given number of empty cells. Games that are already decided,
+     * and positions with an open three or a threat-space win for the side to move,
+     * are skipped.
+     */
+    static List<Board> quietPositions(int empties, int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        ThreatSearch vcf = new ThreatSearch();
+        List<Board> found = new ArrayList<>();
+        while (found.size() < count) {
+            Board board = new Board();
+            Player p = Player.X;
+            boolean decided = false;
+            while (!decided && Coordinate.NCubed - board.totalMoves() > empties) {
+                long own = p == Player.X ? board.xPositions : board.oPositions;
+                long opp = p == Player.X ? board.oPositions : board.xPositions;
+                long occupied = own | opp;
+                long blocks = MoveOrdering.threatCells(opp, occupied);
+                decided = MoveOrdering.threatCells(own, occupied) != 0 || Long.bitCount(blocks) > 1;
+                int cell;
+                if (blocks != 0) {
+                    cell = Long.numberOfTrailingZeros(blocks);
+                } else {
+                    do {
+                        cell = random.nextInt(Coordinate.NCubed);
+                    } while (board.get(cell) != null);
+                }
+                board.makeMove(cell, p);
+                p = p.other();
+            }
+            long occupied = board.xPositions | board.oPositions;
+            if (!decided && MoveOrdering.threatCells(board.xPositions, occupied) == 0 &&
+                    MoveOrdering.threatCells(board.oPositions, occupied) == 0 && vcf.findWin(board, p) == null) {
+                found.add(board);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Ten quiet positions each at 36, 40, 44 and 48 empty cells, for the blunder
+     * counts.
+     */
+    static List<Board> quietMiddlegames() {
+        List<Board> positions = new ArrayList<>();
+        for (int empties = 36; empties <= 48; empties += 4) {
+            positions.addAll(quietPositions(empties, 10, empties));
+        }
+        return positions;
+    }
+
+    /**
+     * For each empty count: how long the exact solver takes, how long the main
+     * search takes at the given depth, and how often the search's move throws away
+     * part of the exact result (a win it no longer wins, or a draw it loses).
+     */
+    static void benchEndgame(int depth) {
+        int perCount = 6;
+        long nodeLimit = 200_000_000L;
+        EngineConfig config = new EngineConfig();
+        config.ENDGAME_SOLVER = false;
+        EndgameSolver solver = new EndgameSolver(20);
+        System.out.printf("%7s %8s %12s %10s %14s %8s%n", "empties", "solved", "solver nodes", "solver ms",
+                "search ms (d" + depth + ")", "worse");
+        for (int empties = 16; empties <= 40; empties += 4) {
+            long solverNodes = 0;
+            long solverMicros = 0;
+            List<Board> solved = new ArrayList<>();
+            List<EndgameSolver.Result> exact = new ArrayList<>();
+            for (Board board : quietPositions(empties, perCount, empties)) {
+                EndgameSolver.Result result = solver.solve(board, nodeLimit, 0);
+                solverNodes += solver.nodes();
+                if (result != null) {
+                    solved.add(board);
+                    exact.add(result);
+                    solverMicros += result.micros;
+                }
+            }
+
+            Run run = searchAll(config, depth, solved);
+            int worse = 0;
+            for (int i = 0; i < solved.size(); i++) {
+                Board after = Board.valueOf(solved.get(i).toString());
+                after.makeMove(run.moves[i], sideToMove(after));
+                EndgameSolver.Result result = solver.solve(after, nodeLimit, 0);
+                if (result != null && Integer.signum(-result.score) < Integer.signum(exact.get(i).score)) {
+                    worse++;
+                }
+            }
+            int n = Math.max(1, solved.size());
+            System.out.printf("%7d %5d/%-2d %12d %10.1f %14.1f %5d/%-2d%n", empties, solved.size(), perCount,
+                    solverNodes / perCount, solverMicros / 1000.0 / n,
+                    Arrays.stream(run.nanos).sum() / 1e6 / n, worse, solved.size());
+        }
+    }
+
+    /**
+     * Startup: what every search used to pay (a fresh ForkJoinPool, a progress
+     * thread and three helper threads, all torn down again) against taking a handle
+     * from the shared executor and running three helpers on its reused threads.
+     *
+     * Oversubscription: 8 searches at once, as TestMaker runs games, each asking for
+     * 4 Lazy SMP threads. Without fairness every search gets them all; with it they
+     * split the executor's threads.
+     */
+    static void benchExecutor(int depth) {
+        int rounds = 500;
+        Runnable idle = () -> { };
+        EngineExecutor shared = new EngineExecutor(Runtime.getRuntime().availableProcessors());
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+                List<Thread> started = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    Thread thread = new Thread(idle);
+                    thread.start();
+                    started.add(thread);
+                }
+                for (Thread thread : started) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                pool.shutdownNow();
+            }
+            long perSearch = (System.nanoTime() - start) / rounds;
+
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                try (EngineExecutor.Search search = shared.begin()) {
+                    List<Future<?>> helpers = new ArrayList<>();
+                    for (int t = 0; t < 3; t++) {
+                        helpers.add(search.startHelper(idle));
+                    }
+                    for (Future<?> f : helpers) {
+                        f.get();
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            long pooled = (System.nanoTime() - start) / rounds;
+            if (pass == 1) {
+                System.out.printf("startup per search: fresh threads %d us, shared executor %d us%n",
+                        perSearch / 1000, pooled / 1000);
+            }
+        }
+
+        for (boolean fair : new boolean[] { false, true }) {
+            EngineExecutor executor = new EngineExecutor(Runtime.getRuntime().availableProcessors(), fair);
+            EngineConfig config = new EngineConfig();
+            config.PARALLEL = EngineConfig.ParallelStrategy.LAZY_SMP;
+            config.SEARCH_THREADS = 4;
+            config.TT_SIZE_MB = 16;
+            ExecutorService games = Executors.newFixedThreadPool(8);
+            List<Future<Long>> nodes = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int g = 0; g < 8; g++) {
+                final String position = POSITIONS[g];
+                nodes.add(games.submit(() -> {
+                    Board board = Board.valueOf(position);
+                    AIPlayer ai = new AIPlayer(sideToMove(board), depth, config);
+                    ai.setExecutor(executor);
+                    ai.chooseBestMove(board);
+                    return ai.getNodeCount() + ai.getHelperNodeCount();
+                }));
+            }
+            long total = 0;
+            for (Future<Long> f : nodes) {
+                try {
+                    total += f.get();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            games.shutdown();
+            executor.shutdown();
+            System.out.printf("8 concurrent searches, %s: %d ms, %d nodes, %d helper threads started%n",
+                    fair ? "fair shares" : "4 threads each", elapsedMs, total, executor.helpersStarted());
+        }
+    }
+
+    /**
+     * A blunder is a move after which the opponent has a threat-space win although
+     * some other move would have avoided it. The search runs on YBWC with one
+     * thread so ties are broken the same way every time.
+     */
+    static void benchQuiescence(int maxDepth) {
+        List<Board> positions = quietMiddlegames();
+        ThreatSearch vcf = new ThreatSearch();
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            for (boolean quiescence : new boolean[] { false, true }) {
+                EngineConfig config = benchConfig();
+                config.QUIESCENCE = quiescence;
+                config.PARALLEL = EngineConfig.ParallelStrategy.YBWC;
+                Run run = searchAll(config, depth, positions);
+                System.out.printf("%-24s depth %d  nodes %10d  time %7d ms  blunders %d/%d%n",
+                        quiescence ? "quiescence" : "plain", depth, run.nodes(), run.elapsedMs(),
+                        blunders(vcf, positions, run), positions.size());
+            }
+        }
+    }
+
+    static void benchPruning(int depth) {
+        Map<String, EngineConfig> configs = new LinkedHashMap<>();
+        for (String name : new String[] { "none", "null move", "lmr", "futility", "all" }) {
+            EngineConfig config = benchConfig();
+            config.NULL_MOVE = name.equals("null move") || name.equals("all");
+            config.LMR = name.equals("lmr") || name.equals("all");
+            config.FUTILITY = name.equals("futility") || name.equals("all");
+            configs.put(name, config);
+        }
+        for (Map.Entry<String, EngineConfig> e : configs.entrySet()) {
+            runFixedDepth(e.getKey(), e.getValue(), depth);
+        }
+
+        List<Board> positions = quietMiddlegames();
+        ThreatSearch vcf = new ThreatSearch();
+        for (Map.Entry<String, EngineConfig> e : configs.entrySet()) {
+            EngineConfig config = e.getValue().copy();
+            config.TIME_PER_MOVE_MS = 500;
+            Run run = searchAll(config, 0, positions);
+            System.out.printf("%-24s 500 ms  average depth %.2f  blunders %d/%d%n",
+                    e.getKey(), (double) run.depths / positions.size(), blunders(vcf, positions, run),
+                    positions.size());
+        }
+    }
+
+    /**
+     * Bytes allocated by the searching thread, from the JVM's per-thread counter.
+     * The cost of a move outside the tree (root ordering, result lists) is taken out
+     * by searching each position to depth - 1 and depth and dividing the difference
+     * in bytes by the difference in nodes.
+     */
+    static void benchAlloc(int depth) {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("Per-thread allocation counters are not available on this JVM");
+            return;
+        }
+        EngineConfig config = benchConfig();
+        config.TT_SIZE_MB = 16;
+        for (int pass = 0; pass < 2; pass++) {
+            Run shallow = searchAll(config, depth - 1, boards(POSITIONS));
+            Run deep = searchAll(config, depth, boards(POSITIONS));
+            if (pass == 1) {
+                System.out.printf("depth %d: %d nodes, %d bytes (%.1f per node); depth %d: %d nodes, %d bytes; " +
+                                "per extra node %.1f bytes%n",
+                        depth - 1, shallow.nodes(), shallow.allocatedBytes,
+                        (double) shallow.allocatedBytes / Math.max(1, shallow.nodes()),
+                        depth, deep.nodes(), deep.allocatedBytes,
+                        (double) (deep.allocatedBytes - shallow.allocatedBytes) /
+                                Math.max(1, deep.nodes() - shallow.nodes()));
+            }
+        }
+    }
+
+    static void benchMultiPv(int depth) {
+        EngineConfig config = benchConfig();
+        runFixedDepth("chooseBestMove", config, depth);
+        for (int k : new int[] { 1, 3, 5 }) {
+            Run run = searchAll(config, depth, boards(POSITIONS), (ai, board) -> ai.analyze(board, k).best().move);
+            print("analyze K=" + k, depth, run);
+        }
+        Board board = Board.valueOf(POSITIONS[0]);
+        System.out.println(new AIPlayer(sideToMove(board), depth, config).analyze(board, 3));
+    }
+
+    /**
+     * Replays random games (fixed seed) on one Position, so its line counts are only
+     * ever updated by makeMove and undoMove, and checks at every ply while unwinding
+     * that both evaluators give the same score for both sides. Then times both over
+     * all the positions seen.
+     */
+    static void benchEval(int games) {
+        Weights w = new Weights(true);
+        List<Position> positions = new ArrayList<>();
+        List<Board> boards = new ArrayList<>();
+        long checked = 0;
+        int mismatches = 0;
+        for (int[] moves : randomGameMoves(games, 21)) {
+            Position position = new Position();
+            Player p = Player.X;
+            for (int cell : moves) {
+                position.makeMove(cell, p);
+                p = p.other();
+                positions.add(position.copy());
+                boards.add(Board.valueOf(position.toString()));
+            }
+            for (int i = moves.length; i >= 0; i--) {
+                // a plain Board gets the line-scanning evaluator
+                Board board = Board.valueOf(position.toString());
+                for (Player side : Player.values()) {
+                    checked++;
+                    if (Heuristic.evaluate(position, side, w) != Heuristic.evaluate(board, side, w)) {
+                        mismatches++;
+                    }
+                }
+                if (i > 0) {
+                    position.undoMove(moves[i - 1]);
+                }
+            }
+        }
+        System.out.println(positions.size() + " positions from " + games + " games, " + checked
+                + " evaluations compared, " + mismatches + " differ");
+        check(mismatches == 0, "evaluate(Position) and evaluate(Board) differ");
+
+        for (int round = 0; round < 3; round++) {
+            long sum = 0;
+            long start = System.nanoTime();
+            for (Board board : boards) {
+                sum += Heuristic.evaluate(board, Player.X, w);
+            }
+            long scanNs = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (Position position : positions) {
+                sum -= Heuristic.evaluate(position, Player.X, w);
+            }
+            long countsNs = System.nanoTime() - start;
+            System.out.printf("line scan %6.0f ns/eval   line counts %6.0f ns/eval   speedup %.1fx   (check %d)%n",
+                    (double) scanNs / boards.size(), (double) countsNs / positions.size(),
+                    (double) scanNs / countsNs, sum);
+        }
+    }
+
+    /**
+     * Plays random games (fixed seed) forward and back on one Position that also
+     * keeps its symmetric keys, and after every makeMove and undoMove compares the
+     * running Zobrist key, the symmetric keys and the line counts with what
+     * the bitboards give from scratch.
+     */
+    static void benchHash(int games) {
+        long checked = 0;
+        int mismatches = 0;
+        for (int[] moves : randomGameMoves(games, 26)) {
+            Position position = new Position();
+            position.trackSymmetry(Coordinate.NCubed);
+            Player p = Player.X;
+            for (int cell : moves) {
+                position.makeMove(cell, p);
+                p = p.other();
+                checked++;
+                mismatches += inSync(position) ? 0 : 1;
+            }
+            for (int i = moves.length - 1; i >= 0; i--) {
+                position.undoMove(moves[i]);
+                checked++;
+                mismatches += inSync(position) ? 0 : 1;
+            }
+        }
+        System.out.println(checked + " updates from " + games + " games, " + mismatches + " out of sync");
+        check(mismatches == 0, "incremental keys or line counts out of sync");
+    }
+
+    private static boolean inSync(Position position) {
+        if (position.hash() != Position.computeHash(position.xPositions, position.oPositions)) {
+            return false;
+        }
+        if (position.hasSymmetryHashes() &&
+                !Arrays.equals(position.symmetryHashes(), Symmetry.hashes(position.xPositions, position.oPositions))) {
+            return false;
+        }
+        Position fresh = new Position(position);
+        for (Player side : Player.values()) {
+            if (position.openCenters(side) != fresh.openCenters(side)) {
+                return false;
+            }
+            for (int pieces = 1; pieces <= 4; pieces++) {
+                if (position.openLines(side, pieces) != fresh.openLines(side, pieces)) {
+                    return false;
+                }
+            }
+            for (int line = 0; line < Geometry.LINE_COUNT; line++) {
+                if (position.lineCount(side, line) != fresh.lineCount(side, line)) {
+                    return false;
+                }
+            }
+        }
+        return position.deadLines() == fresh.deadLines();
+    }
+
+    /**
+     * The lock-free TranspositionTable on its own. On one thread, a probe right
+     * after a store returns that store, and any other hit is something once stored
+     * under the key. Then four threads store and probe keys whose data is a function
+     * of the key, so a torn or mixed-up entry would show as a hit with wrong data.
+     */
+    static void benchTt(int sizeMb) {
+        TranspositionTable table = new TranspositionTable(sizeMb);
+        SplittableRandom random = new SplittableRandom(27);
+        long[] keys = new long[2 * table.capacity()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+        Map<Long, Set<Long>> stored = new HashMap<>();
+        long stores = 0;
+        long hits = 0;
+        int wrong = 0;
+        for (int op = 0; op < 4 * keys.length; op++) {
+            if (op % 10_000 == 0) {
+                table.newSearch();
+            }
+            long key = keys[random.nextInt(keys.length)];
+            if (random.nextBoolean()) {
+                int value = random.nextInt();
+                int depth = random.nextInt(64);
+                int bound = random.nextInt(3);
+                int move = random.nextInt(Coordinate.NCubed + 1) - 1;
+                table.store(key, value, depth, bound, move);
+                stores++;
+                long data = table.probe(key);
+                if (TranspositionTable.value(data) != value || TranspositionTable.depth(data) != depth ||
+                        TranspositionTable.bound(data) != bound || TranspositionTable.move(data) != move) {
+                    wrong++;
+                }
+                stored.computeIfAbsent(key, k -> new HashSet<>()).add(data);
+            } else {
+                long data = table.probe(key);
+                if (data != 0) {
+                    hits++;
+                    Set<Long> seen = stored.get(key);
+                    if (seen == null || !seen.contains(data)) {
+                        wrong++;
+                    }
+                }
+            }
+        }
+        System.out.println("one thread: " + stores + " stores, " + hits + " probe hits, " + wrong + " wrong");
+        check(wrong == 0, "transposition table returned data that was not stored under the key");
+
+        TranspositionTable sharedTable = new TranspositionTable(sizeMb);
+        AtomicLong sharedHits = new AtomicLong();
+        AtomicInteger sharedWrong = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final long seed = 28 + t;
+            Thread thread = new Thread(() -> {
+                SplittableRandom r = new SplittableRandom(seed);
+                for (int op = 0; op < 4 * keys.length; op++) {
+                    long key = keys[r.nextInt(keys.length)];
+                    if (r.nextBoolean()) {
+                        sharedTable.store(key, (int) (key >>> 32), (int) (key & 63), (int) ((key >>> 6) & 1),
+                                (int) ((key >>> 8) & 63));
+                    } else {
+                        long data = sharedTable.probe(key);
+                        if (data != 0) {
+                            sharedHits.incrementAndGet();
+                            if (TranspositionTable.value(data) != (int) (key >>> 32) ||
+                                    TranspositionTable.depth(data) != (int) (key & 63) ||
+                                    TranspositionTable.bound(data) != (int) ((key >>> 6) & 1) ||
+                                    TranspositionTable.move(data) != (int) ((key >>> 8) & 63)) {
+                                sharedWrong.incrementAndGet();
+                            }
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        System.out.println("four threads: " + sharedHits.get() + " probe hits, " + sharedWrong.get() + " wrong");
+        check(sharedWrong.get() == 0, "transposition table returned a torn or foreign entry under threads");
+    }
+
+    /**
+     * PN2 and df-pn against the exact alpha-beta EndgameSolver on every position one
+     * move after a quiet position with 11 empty cells, so the bad moves leave wins
+     * to find: the same value everywhere, and when the proof-number search says WIN,
+     * its best move must win according to the solver.
+     */
+    static void benchPn(int count) {
+        EndgameSolver exact = new EndgameSolver(20);
+        ProofNumberSearch pn = new ProofNumberSearch();
+        List<Board> positions = new ArrayList<>();
+        for (Board quiet : quietPositions(11, count, 11)) {
+            Player toMove = sideToMove(quiet);
+            for (int move = 0; move < Coordinate.NCubed; move++) {
+                if (quiet.get(move) == null) {
+                    Board after = Board.valueOf(quiet.toString());
+                    after.makeMove(move, toMove);
+                    if (!after.hasWon(toMove, move)) {
+                        positions.add(after);
+                    }
+                }
+            }
+        }
+        int[] values = new int[3];
+        int disagreements = 0;
+        for (Board board : positions) {
+            EndgameSolver.Result truth = exact.solve(board, Long.MAX_VALUE, 0);
+            ProofNumberSearch.Value expected = truth.score > 0 ? ProofNumberSearch.Value.WIN :
+                    truth.score < 0 ? ProofNumberSearch.Value.LOSS : ProofNumberSearch.Value.DRAW;
+            values[expected.ordinal()]++;
+            for (ProofNumberSearch.Result r : new ProofNumberSearch.Result[] { pn.solve(board), pn.solveDepthFirst(board) }) {
+                if (r.value != expected || (r.value == ProofNumberSearch.Value.WIN && !wins(exact, board, r.bestMove))) {
+                    disagreements++;
+                }
+            }
+        }
+        System.out.println(positions.size() + " positions (" + values[0] + " won, " + values[1] + " drawn, "
+                + values[2] + " lost), " + disagreements + " proof-number results disagree with the solver");
+        check(disagreements == 0, "proof-number search and the endgame solver disagree");
+    }
+
+    private static boolean wins(EndgameSolver exact, Board board, int move) {
+        if (move < 0 || board.get(move) != null) {
+            return false;
+        }
+        Player toMove = sideToMove(board);
+        Board after = Board.valueOf(board.toString());
+        after.makeMove(move, toMove);
+        return after.hasWon(toMove, move) || exact.solve(after, Long.MAX_VALUE, 0).score < 0;
+    }
+
+    /**
+     * The win check after every move of random games (fixed seed), done four ways:
+     * the old scan over Line objects, the scan over Geometry.LINES, the lines
+     * through the last move only, and Position's count of complete lines. All four
+     * must agree; then each is timed over all the positions.
+     */
+    static void benchTerminal(int games) {
+        List<Board> boards = new ArrayList<>();
+        List<Position> positions = new ArrayList<>();
+        List<Integer> lastMoves = new ArrayList<>();
+        List<Player> movers = new ArrayList<>();
+        for (int[] moves : randomGameMoves(games, 22)) {
+            Position position = new Position();
+            Player p = Player.X;
+            for (int cell : moves) {
+                position.makeMove(cell, p);
+                boards.add(Board.valueOf(position.toString()));
+                positions.add(position.copy());
+                lastMoves.add(cell);
+                movers.add(p);
+                p = p.other();
+            }
+        }
+        int n = boards.size();
+        int[] moves = new int[n];
+        for (int i = 0; i < n; i++) {
+            moves[i] = lastMoves.get(i);
+        }
+
+        int wins = 0;
+        int mismatches = 0;
+        for (int i = 0; i < n; i++) {
+            Board board = boards.get(i);
+            Player mover = movers.get(i);
+            boolean won = scanLines(board, mover);
+            wins += won ? 1 : 0;
+            if (board.hasWon(mover) != won || board.hasWon(mover, moves[i]) != won
+                    || positions.get(i).hasWon(mover) != won) {
+                mismatches++;
+            }
+        }
+        System.out.println(n + " positions from " + games + " games, " + wins + " wins, "
+                + mismatches + " disagreements");
+        check(mismatches == 0, "win checks disagree");
+
+        for (int round = 0; round < 3; round++) {
+            long[] nanos = new long[4];
+            int found = 0;
+            for (int way = 0; way < nanos.length; way++) {
+                long start = System.nanoTime();
+                for (int rep = 0; rep < 20; rep++) {
+                    for (int i = 0; i < n; i++) {
+                        Player mover = movers.get(i);
+                        boolean won = switch (way) {
+                            case 0 -> scanLines(boards.get(i), mover);
+                            case 1 -> boards.get(i).hasWon(mover);
+                            case 2 -> boards.get(i).hasWon(mover, moves[i]);
+                            default -> positions.get(i).hasWon(mover);
+                        };
+                        found += won ? 1 : 0;
+                    }
+                }
+                nanos[way] = System.nanoTime() - start;
+            }
+            double per = 20.0 * n;
+            System.out.printf("Line objects %5.1f ns   Geometry.LINES %5.1f ns   last move %5.1f ns   "
+                            + "line counts %5.1f ns   (check %d)%n",
+                    nanos[0] / per, nanos[1] / per, nanos[2] / per, nanos[3] / per, found);
+        }
+    }
+
+    /**
+     * Fixed-depth searches on one thread without and with the eval cache. Both
+     * search the same tree, so only the evaluator calls and the time change. The
+     * pair is run twice and only the second, warmed-up, run is shown.
+     */
+    static void benchEvalCache(int depth) {
+        long[] baseline = null;
+        int defaultMb = new EngineConfig().EVAL_CACHE_MB;
+        int[] sizes = { 0, defaultMb, 0, defaultMb };
+        for (int run = 0; run < sizes.length; run++) {
+            int sizeMb = sizes[run];
+            EngineConfig config = new EngineConfig();
+            config.EVAL_CACHE_MB = sizeMb;
+            config.PARALLEL = EngineConfig.ParallelStrategy.LAZY_SMP;
+            config.SEARCH_THREADS = 1;
+            Run result = searchAll(config, depth, boards(POSITIONS));
+            if (run < 2) {
+                continue;
+            }
+            System.out.printf("%-12s depth %d  nodes %9d  evaluator calls %9d  cache hits %9d  time %6d ms  moves %s%n",
+                    sizeMb == 0 ? "no cache" : sizeMb + " MB cache", depth, result.nodes(), result.evaluations,
+                    result.evalCacheHits, result.elapsedMs(), result.moves());
+            if (baseline == null) {
+                baseline = new long[] { result.evaluations, result.elapsedMs() };
+            } else {
+                System.out.printf("%-12s evaluator calls -%.1f%%, time %+.1f%%%n", "",
+                        100.0 * (baseline[0] - result.evaluations) / Math.max(1, baseline[0]),
+                        100.0 * (result.elapsedMs() - baseline[1]) / Math.max(1, baseline[1]));
+            }
+        }
+    }
+
+    /**
+     * ThreatMap.compute() against the direct way: for every empty cell, place the
+     * piece and rescan all 76 lines for twos, then intersect them pairwise. Both
+     * sides of every position are checked field by field, then both are timed.
+     */
+    static void benchThreats(int games) {
+        List<Position> positions = randomGames(games, 25);
+        ThreatMap map = new ThreatMap();
+        int mismatches = 0;
+        for (Position position : positions) {
+            for (int side = 0; side < 2; side++) {
+                long own = side == 0 ? position.xPositions : position.oPositions;
+                long opp = side == 0 ? position.oPositions : position.xPositions;
+                map.compute(own, opp);
+                long[] expected = rescanThreats(own, opp);
+                if (map.wins != expected[0] || map.doubleThreats != expected[1] || map.forkSquares != expected[2]
+                        || map.forks != expected[3] || map.forkTotal != expected[4]) {
+                    mismatches++;
+                }
+            }
+        }
+        System.out.println(positions.size() + " positions, " + 2 * positions.size() + " threat maps compared, "
+                + mismatches + " differ");
+        check(mismatches == 0, "ThreatMap differs from the rescan");
+
+        for (int round = 0; round < 3; round++) {
+            long check = 0;
+            long start = System.nanoTime();
+            for (Position position : positions) {
+                check += rescanThreats(position.xPositions, position.oPositions)[4];
+            }
+            long rescanNs = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (Position position : positions) {
+                check -= map.compute(position.xPositions, position.oPositions).forkTotal;
+            }
+            long mapNs = System.nanoTime() - start;
+            System.out.printf("rescan %7.0f ns/map   ThreatMap %6.0f ns/map   speedup %.1fx   (check %d)%n",
+                    (double) rescanNs / positions.size(), (double) mapNs / positions.size(),
+                    (double) rescanNs / mapNs, check);
+        }
+    }
+
+    /**
+     * {wins, doubleThreats, forkSquares, forks, forkTotal} the direct way.
+     */
+    private static long[] rescanThreats(long own, long opp) {
+        long empty = ~(own | opp);
+        long wins = 0;
+        long once = 0;
+        long twice = 0;
+        for (long line : Geometry.LINES) {
+            if ((line & opp) == 0 && Long.bitCount(line & own) == 3) {
+                wins |= line & empty;
+            }
+            if ((line & opp) == 0 && Long.bitCount(line & own) == 2) {
+                twice |= once & line & empty;
+                once |= line & empty;
+            }
+        }
+        long forkSquares = 0;
+        long forkTotal = 0;
+        for (long cells = empty; cells != 0; cells &= cells - 1) {
+            long cell = cells & -cells;
+            int forks = rescanForks(own | cell, opp);
+            if (forks > 0) {
+                forkSquares |= cell;
+                forkTotal += forks;
+            }
+        }
+        return new long[] { wins, twice, forkSquares, rescanForks(own, opp), forkTotal };
+    }
+
+    private static int rescanForks(long own, long opp) {
+        long empty = ~(own | opp);
+        long[] twos = new long[Geometry.LINE_COUNT];
+        int n = 0;
+        for (long line : Geometry.LINES) {
+            if ((line & opp) == 0 && Long.bitCount(line & own) == 2) {
+                twos[n++] = line & empty;
+            }
+        }
+        int forks = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if ((twos[i] & twos[j]) != 0) {
+                    forks++;
+                }
+            }
+        }
+        return forks;
+    }
+
+    /**
+     * The moves of random games (fixed seed), X first, each up to the win or the
+     * full board.
+     */
+    static List<int[]> randomGameMoves(int games, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<int[]> played = new ArrayList<>();
+        for (int g = 0; g < games; g++) {
+            Position position = new Position();
+            int[] moves = new int[Coordinate.NCubed];
+            int plies = 0;
+            Player p = Player.X;
+            while (!position.isFull() && !position.hasWon(p.other())) {
+                long empty = position.emptyCells();
+                for (int skip = random.nextInt(Long.bitCount(empty)); skip > 0; skip--) {
+                    empty &= empty - 1;
+                }
+                moves[plies] = Long.numberOfTrailingZeros(empty);
+                position.makeMove(moves[plies++], p);
+                p = p.other();
+            }
+            played.add(Arrays.copyOf(moves, plies));
+        }
+        return played;
+    }
+
+    /**
+     * The position after every move of random games (fixed seed), up to the win.
+     */
+    static List<Position> randomGames(int games, long seed) {
+        List<Position> positions = new ArrayList<>();
+        for (int[] moves : randomGameMoves(games, seed)) {
+            Position position = new Position();
+            Player p = Player.X;
+            for (int cell : moves) {
+                position.makeMove(cell, p);
+                positions.add(position.copy());
+                p = p.other();
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * LineCounter.Scalar against LineCounter.DEFAULT, which is the vector counter
+     * when the incubator module is loaded: first the count of one side's pieces on
+     * all lines, then the whole evaluate(Board, ...). Scores are checked against
+     * each other and against evaluate(Position, ...).
+     */
+    static void benchSimd(int games) {
+        LineCounter scalar = new LineCounter.Scalar();
+        LineCounter simd = LineCounter.DEFAULT;
+        Weights w = new Weights(true);
+        List<Position> positions = randomGames(games, 23);
+        List<Board> boards = new ArrayList<>();
+        for (Position position : positions) {
+            boards.add(Board.valueOf(position.toString()));
+        }
+        int n = boards.size();
+        int mismatches = 0;
+        for (int i = 0; i < n; i++) {
+            for (Player side : Player.values()) {
+                long expected = Heuristic.evaluate(positions.get(i), side, w);
+                if (Heuristic.evaluate(boards.get(i), side, w, scalar) != expected
+                        || Heuristic.evaluate(boards.get(i), side, w, simd) != expected) {
+                    mismatches++;
+                }
+            }
+        }
+        System.out.println(n + " positions, counters: " + scalar.name() + " and " + simd.name()
+                + ", " + mismatches + " evaluations differ");
+        check(mismatches == 0, "line counters give different evaluations");
+
+        long[] counts = new long[LineCounter.PADDED];
+        LineCounter[] counters = { scalar, simd };
+        for (int round = 0; round < 5; round++) {
+            StringBuilder line = new StringBuilder();
+            long check = 0;
+            for (LineCounter counter : counters) {
+                long start = System.nanoTime();
+                for (int rep = 0; rep < 50; rep++) {
+                    for (Board board : boards) {
+                        counter.count(board.xPositions, counts);
+                        check += counts[rep % Geometry.LINE_COUNT];
+                    }
+                }
+                double countNs = (System.nanoTime() - start) / (50.0 * n);
+                start = System.nanoTime();
+                for (Board board : boards) {
+                    check += Heuristic.evaluate(board, Player.X, w, counter);
+                }
+                double evalNs = (double) (System.nanoTime() - start) / n;
+                line.append(String.format("%-16s count %5.1f ns  evaluate %7.0f ns    ", counter.name(), countNs, evalNs));
+            }
+            System.out.println(line.append("(check ").append(check).append(')'));
+        }
+    }
+
+    /**
+     * Board.hasWon() as it was: a scan over the Line objects.
+     */
+    private static boolean scanLines(Board board, Player player) {
+        long positions = (player == Player.X) ? board.xPositions : board.oPositions;
+        for (Line line : Line.lines) {
+            if ((positions & line.positions()) == line.positions()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Searches every position with a node budget instead of a clock, three times:
+     * twice with the same config and once with more search threads configured,
+     * which deterministic mode must ignore. All three checksums must agree.
+     */
+    static void benchDeterministic(long nodeLimit) {
+        EngineConfig config = new EngineConfig();
+        config.OPENING_BOOK = null;
+        config.DETERMINISTIC = true;
+        config.NODE_LIMIT = nodeLimit;
+        EngineConfig threaded = config.copy();
+        threaded.SEARCH_THREADS = 4;
+        threaded.PARALLEL = EngineConfig.ParallelStrategy.YBWC;
+
+        List<Board> positions = boards(POSITIONS);
+        Run[] runs = { searchAll(config, 0, positions), searchAll(config, 0, positions), searchAll(threaded, 0, positions) };
+        int mismatches = 0;
+        for (int i = 0; i < positions.size(); i++) {
+            long first = runs[0].checksums[i];
+            boolean same = runs[1].checksums[i] == first && runs[2].checksums[i] == first;
+            if (!same) {
+                mismatches++;
+            }
+            Run last = runs[2];
+            System.out.printf("nodes %8d  move %2d  score %8d  checksum %016x %016x %016x  %s%n",
+                    last.nodes[i], last.moves[i], last.scores[i],
+                    first, runs[1].checksums[i], last.checksums[i], same ? "ok" : "MISMATCH");
+        }
+        long elapsedMs = runs[0].elapsedMs() + runs[1].elapsedMs() + runs[2].elapsedMs();
+        System.out.println("node budget " + nodeLimit + ": " + mismatches + " of " + positions.size()
+                + " positions differ, " + elapsedMs + " ms");
+        check(mismatches == 0, "deterministic search checksums differ");
+    }
+
+    /**
+     * Moves of the run that lose to a threat sequence although some other move
+     * would not have.
+     */
+    private static int blunders(ThreatSearch vcf, List<Board> positions, Run run) {
+        int blunders = 0;
+        for (int i = 0; i < positions.size(); i++) {
+            Board board = positions.get(i);
+            Player toMove = sideToMove(board);
+            if (losesToThreats(vcf, board, run.moves[i], toMove) && !allLoseToThreats(vcf, board, toMove)) {
+                blunders++;
+            }
+        }
+        return blunders;
+    }
+
+    private static boolean losesToThreats(ThreatSearch vcf, Board board, int move, Player toMove) {
+        Board after = Board.valueOf(board.toString());
+        after.makeMove(move, toMove);
+        return !after.hasWon(toMove) && vcf.findWin(after, toMove.other()) != null;
+    }
+
+    private static boolean allLoseToThreats(ThreatSearch vcf, Board board, Player toMove) {
+        for (int move = 0; move < Coordinate.NCubed; move++) {
+            if (board.get(move) == null && !losesToThreats(vcf, board, move, toMove)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Head-to-head games between MctsPlayer and the alpha-beta AIPlayer, both on
+     * the same fixed time per move and without the opening book. Each opening is
+     * played twice with the colors swapped.
+     */
+    static void benchVersus(long moveMillis, int games) {
+        EngineConfig config = new EngineConfig();
+        config.TIME_PER_MOVE_MS = moveMillis;
+        config.OPENING_BOOK = null;
+        config.PONDER = false;
+        int mctsWins = 0;
+        int draws = 0;
+        int alphaBetaWins = 0;
+        long[] thinkNanos = new long[2];
+        int[] moveCounts = new int[2];
+        for (int g = 0; g < games; g++) {
+            Board board = Board.valueOf(OPENINGS[(g / 2) % OPENINGS.length]);
+            Player mctsSide = (g % 2 == 0) ? Player.X : Player.O;
+            Engine mcts = new MctsPlayer(mctsSide, config.copy());
+            Engine alphaBeta = new AIPlayer(mctsSide.other(), new Weights(true), config.copy());
+            Player toMove = sideToMove(board);
+            Player winner = null;
+            while (winner == null && !board.isFull()) {
+                boolean mctsMoves = toMove == mctsSide;
+                Engine engine = mctsMoves ? mcts : alphaBeta;
+                long start = System.nanoTime();
+                int move = engine.chooseBestMove(board);
+                thinkNanos[mctsMoves ? 0 : 1] += System.nanoTime() - start;
+                moveCounts[mctsMoves ? 0 : 1]++;
+                board.makeMove(move, toMove);
+                if (board.hasWon(toMove, move)) {
+                    winner = toMove;
+                }
+                toMove = toMove.other();
+            }
+            String result = winner == null ? "draw" : winner == mctsSide ? "MCTS wins" : "alpha-beta wins";
+            if (winner == null) {
+                draws++;
+            } else if (winner == mctsSide) {
+                mctsWins++;
+            } else {
+                alphaBetaWins++;
+            }
+            System.out.printf("game %2d  MCTS as %s  %-16s after %d moves%n", g + 1, mctsSide, result, board.totalMoves());
+        }
+        System.out.printf("MCTS %d  draws %d  alpha-beta %d  (%d ms per move; used on average MCTS %d ms, alpha-beta %d ms)%n",
+                mctsWins, draws, alphaBetaWins, moveMillis,
+                thinkNanos[0] / Math.max(1, moveCounts[0]) / 1_000_000,
+                thinkNanos[1] / Math.max(1, moveCounts[1]) / 1_000_000);
+    }
+}
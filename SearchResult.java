@@ -0,0 +1,90 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of an analysis search: the best root moves with exact scores, best
+ * first, each with its principal variation.
+ */
+public class SearchResult {
+    public static class Variation {
+        public final int move;
+        public final long score;  // for the side to move at the root
+        public final int depth;
+        public final int[] pv;    // starts with move
+
+        Variation(int move, long score, int depth, int[] pv) {
+            this.move = move;
+            this.score = score;
+            this.depth = depth;
+            this.pv = pv;
+        }
+
+        public String toJson() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{\"move\": ").append(move)
+                    .append(", \"score\": ").append(score)
+                    .append(", \"depth\": ").append(depth)
+                    .append(", \"pv\": [");
+            for (int i = 0; i < pv.length; i++) {
+                sb.append(i > 0 ? ", " : "").append(pv[i]);
+            }
+            return sb.append("]}").toString();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int cell : pv) {
+                sb.append(' ').append(cell);
+            }
+            return String.format("%2d  %8d  depth %d  pv%s", move, score, depth, sb);
+        }
+    }
+
+    public final List<Variation> variations;
+    public final int depth;
+    public final long nodes;
+    public final long millis;
+
+    SearchResult(List<Variation> variations, int depth, long nodes, long millis) {
+        this.variations = Collections.unmodifiableList(variations);
+        this.depth = depth;
+        this.nodes = nodes;
+        this.millis = millis;
+    }
+
+    /**
+     * The best variation, or null if not even depth 1 finished.
+     */
+    public Variation best() {
+        return variations.isEmpty() ? null : variations.get(0);
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"depth\": ").append(depth)
+                .append(", \"nodes\": ").append(nodes)
+                .append(", \"millis\": ").append(millis)
+                .append(", \"variations\": [");
+        for (int i = 0; i < variations.size(); i++) {
+            sb.append(i > 0 ? ", " : "").append(variations.get(i).toJson());
+        }
+        return sb.append("]}").toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("depth ").append(depth).append(", ").append(nodes).append(" nodes in ")
+                .append(millis).append(" ms");
+        for (Variation v : variations) {
+            sb.append('\n').append(v);
+        }
+        return sb.toString();
+    }
+}
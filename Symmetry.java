@@ -0,0 +1,306 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The line-preserving automorphisms of the 4x4x4 board that the evaluator respects.
+ *
+ * There are 192 maps that send all 76 lines onto lines: each is an axis permutation
+ * combined with a one-dimensional map of {0, 1, 2, 3} per axis, the 48 rotations
+ * and reflections of the cube, each combined with the swap of the two inner and
+ * two outer layers (0 1 2 3 -> 1 0 3 2) and its variants, applied to all three
+ * axes at once. They are found by brute force at class load: every axis
+ * permutation and every triple of 1-D maps is tried. Heuristic also scores some
+ * cells for where they are (Heuristic.POSITIONAL_MASKS), so only the maps that take
+ * each of those sets onto itself are kept; anything else would let a position
+ * share a transposition table entry, or a pruned move, with an image the
+ * evaluator scores differently. COUNT is the size of that subgroup.
+ *
+ * Cells are mapped with CELL_MAP; whole bitboards with byte lookup tables, eight
+ * lookups per board. A position's image under symmetry s has Zobrist key
+ * hashes[s] (see Position); the canonical key of a position is the smallest of
+ * its COUNT keys, so all symmetric copies of it share one transposition table
+ * entry.
+ */
+public class Symmetry {
+    // maps that send every line onto a line, before the evaluator's masks are applied
+    static final int LINE_SYMMETRIES = 192;
+
+    // CELL_MAP[s][cell] is the image of cell under symmetry s
+    static final int[][] CELL_MAP = findSymmetries();
+    public static final int COUNT = CELL_MAP.length;
+    static final int[] INVERSE = new int[COUNT];
+    static final int IDENTITY;
+
+    // BYTE_TABLE[s][b][v]: image of byte b of a bitboard with value v
+    private static final long[][][] BYTE_TABLE = new long[COUNT][8][256];
+
+    // ZOBRIST_IMAGES[key][s]: the Zobrist key of the image of (cell, side) under s
+    static final long[][] ZOBRIST_IMAGES = new long[2 * Coordinate.NCubed][COUNT];
+
+    static {
+        int identity = -1;
+        for (int s = 0; s < COUNT; s++) {
+            if (isIdentity(CELL_MAP[s])) {
+                identity = s;
+            }
+        }
+        if (identity < 0) {
+            throw new IllegalStateException("No identity among the board symmetries");
+        }
+        IDENTITY = identity;
+
+        for (int s = 0; s < COUNT; s++) {
+            for (int t = 0; t < COUNT; t++) {
+                if (CELL_MAP[t][CELL_MAP[s][1]] == 1 && composesToIdentity(s, t)) {
+                    INVERSE[s] = t;
+                    break;
+                }
+            }
+            for (int b = 0; b < 8; b++) {
+                for (int v = 0; v < 256; v++) {
+                    long image = 0L;
+                    for (int k = 0; k < 8; k++) {
+                        if ((v & (1 << k)) != 0) {
+                            image |= 1L << CELL_MAP[s][b * 8 + k];
+                        }
+                    }
+                    BYTE_TABLE[s][b][v] = image;
+                }
+            }
+            for (int key = 0; key < 2 * Coordinate.NCubed; key++) {
+                int cell = key % Coordinate.NCubed;
+                int side = key / Coordinate.NCubed;
+                ZOBRIST_IMAGES[key][s] = Position.ZOBRIST[side * Coordinate.NCubed + CELL_MAP[s][cell]];
+            }
+        }
+    }
+
+    /**
+     * The cell maps of all line-preserving symmetries that also map every one of
+     * Heuristic.POSITIONAL_MASKS onto itself.
+     */
+    private static int[][] findSymmetries() {
+        long[] lines = Geometry.LINES.clone();
+        Arrays.sort(lines);
+
+        int[][] axisOrders = { { 0, 1, 2 }, { 0, 2, 1 }, { 1, 0, 2 }, { 1, 2, 0 }, { 2, 0, 1 }, { 2, 1, 0 } };
+        int[][] maps = permutations();
+        int found = 0;
+        List<int[]> kept = new ArrayList<>();
+        for (int[] axes : axisOrders) {
+            for (int[] fx : maps) {
+                for (int[] fy : maps) {
+                    for (int[] fz : maps) {
+                        if (!preservesLines(axes, fx, fy, fz, lines)) {
+                            continue;
+                        }
+                        found++;
+                        int[] cellMap = new int[Coordinate.NCubed];
+                        for (int cell = 0; cell < Coordinate.NCubed; cell++) {
+                            cellMap[cell] = mapCell(axes, fx, fy, fz, cell);
+                        }
+                        if (preservesMasks(cellMap, Heuristic.POSITIONAL_MASKS)) {
+                            kept.add(cellMap);
+                        }
+                    }
+                }
+            }
+        }
+        if (found != LINE_SYMMETRIES) {
+            throw new IllegalStateException("Expected " + LINE_SYMMETRIES + " board symmetries, found " + found);
+        }
+        return kept.toArray(new int[0][]);
+    }
+
+    private Symmetry() {
+    }
+
+    /**
+     * Maps a bitboard through symmetry s.
+     */
+    public static long transform(int s, long bits) {
+        long[][] table = BYTE_TABLE[s];
+        return table[0][(int) bits & 0xFF]
+                | table[1][(int) (bits >>> 8) & 0xFF]
+                | table[2][(int) (bits >>> 16) & 0xFF]
+                | table[3][(int) (bits >>> 24) & 0xFF]
+                | table[4][(int) (bits >>> 32) & 0xFF]
+                | table[5][(int) (bits >>> 40) & 0xFF]
+                | table[6][(int) (bits >>> 48) & 0xFF]
+                | table[7][(int) (bits >>> 56) & 0xFF];
+    }
+
+    public static int transformCell(int s, int cell) {
+        return CELL_MAP[s][cell];
+    }
+
+    public static int inverse(int s) {
+        return INVERSE[s];
+    }
+
+    /**
+     * The Zobrist keys of all COUNT images of a position.
+     */
+    public static long[] hashes(long xPositions, long oPositions) {
+        long[] hashes = new long[COUNT];
+        for (long bits = xPositions; bits != 0; bits &= bits - 1) {
+            update(hashes, Long.numberOfTrailingZeros(bits));
+        }
+        for (long bits = oPositions; bits != 0; bits &= bits - 1) {
+            update(hashes, Coordinate.NCubed + Long.numberOfTrailingZeros(bits));
+        }
+        return hashes;
+    }
+
+    /**
+     * Adds or removes one (cell, side) key, as indexed by Position.keyIndex, in all
+     * COUNT image keys.
+     */
+    static void update(long[] hashes, int key) {
+        long[] images = ZOBRIST_IMAGES[key];
+        for (int s = 0; s < COUNT; s++) {
+            hashes[s] ^= images[s];
+        }
+    }
+
+    /**
+     * @return The symmetry that maps the position onto its canonical form: the one
+     * with the smallest image key.
+     */
+    public static int canonical(long[] hashes) {
+        int best = 0;
+        long min = hashes[0];
+        for (int s = 1; s < COUNT; s++) {
+            if (hashes[s] < min) {
+                min = hashes[s];
+                best = s;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Fills out with the symmetries that leave the position unchanged.
+     *
+     * @return How many there are (1 when the position has no symmetry left).
+     */
+    public static int stabilizer(long[] hashes, int[] out) {
+        long self = hashes[IDENTITY];
+        int n = 0;
+        for (int s = 0; s < COUNT; s++) {
+            if (hashes[s] == self) {
+                out[n++] = s;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Exact version of stabilizer() that compares the mapped boards.
+     */
+    public static int stabilizer(long xPositions, long oPositions, int[] out) {
+        int n = 0;
+        for (int s = 0; s < COUNT; s++) {
+            if (transform(s, xPositions) == xPositions && transform(s, oPositions) == oPositions) {
+                out[n++] = s;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Removes moves that are symmetric to an earlier move in the list, keeping the
+     * order (and so the move ordering) of the ones left.
+     *
+     * @return The new number of moves.
+     */
+    public static int dedupe(int[] moves, int count, int[] stabilizer, int stabilizerCount) {
+        if (stabilizerCount <= 1) {
+            return count;
+        }
+        long covered = 0L;
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int mv = moves[i];
+            if ((covered & (1L << mv)) != 0) {
+                continue;
+            }
+            for (int k = 0; k < stabilizerCount; k++) {
+                covered |= 1L << CELL_MAP[stabilizer[k]][mv];
+            }
+            moves[kept++] = mv;
+        }
+        return kept;
+    }
+
+    private static int mapCell(int[] axes, int[] fx, int[] fy, int[] fz, int cell) {
+        int[] coords = { Coordinate.getX(cell), Coordinate.getY(cell), Coordinate.getZ(cell) };
+        return Coordinate.position(fx[coords[axes[0]]], fy[coords[axes[1]]], fz[coords[axes[2]]]);
+    }
+
+    private static boolean preservesLines(int[] axes, int[] fx, int[] fy, int[] fz, long[] lines) {
+        for (long line : lines) {
+            long image = 0L;
+            for (long bits = line; bits != 0; bits &= bits - 1) {
+                image |= 1L << mapCell(axes, fx, fy, fz, Long.numberOfTrailingZeros(bits));
+            }
+            if (Arrays.binarySearch(lines, image) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean preservesMasks(int[] cellMap, long[] masks) {
+        for (long mask : masks) {
+            long image = 0L;
+            for (long bits = mask; bits != 0; bits &= bits - 1) {
+                image |= 1L << cellMap[Long.numberOfTrailingZeros(bits)];
+            }
+            if (image != mask) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIdentity(int[] cellMap) {
+        for (int cell = 0; cell < cellMap.length; cell++) {
+            if (cellMap[cell] != cell) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean composesToIdentity(int s, int t) {
+        for (int cell = 0; cell < Coordinate.NCubed; cell++) {
+            if (CELL_MAP[t][CELL_MAP[s][cell]] != cell) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[][] permutations() {
+        int[][] result = new int[24][];
+        int n = 0;
+        for (int a = 0; a < 4; a++) {
+            for (int b = 0; b < 4; b++) {
+                for (int c = 0; c < 4; c++) {
+                    int d = 6 - a - b - c;
+                    if (a != b && a != c && b != c && d != a && d != b && d != c) {
+                        result[n++] = new int[] { a, b, c, d };
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
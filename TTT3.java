@@ -25,12 +25,12 @@ public class TTT3 {
         boolean isPlayingAgainstAI;
         boolean isTwoPlayerGame;
         Player humanPlayer;
-        AIPlayer aiPlayerX;
-        AIPlayer aiPlayerO;
+        Engine aiPlayerX;
+        Engine aiPlayerO;
 
         public GameConfig(Board board, Player nextPlayer,
                           boolean isPlayingAgainstAI, boolean isTwoPlayerGame,
-                          Player humanPlayer, AIPlayer aiPlayerX, AIPlayer aiPlayerO) {
+                          Player humanPlayer, Engine aiPlayerX, Engine aiPlayerO) {
             this.initialBoard = board;
             this.nextPlayer = nextPlayer;
             this.isPlayingAgainstAI = isPlayingAgainstAI;
@@ -43,6 +43,16 @@ public class TTT3 {
 
     public static void main(String[] args) {
 
+        if (args.length >= 2 && args[0].equalsIgnoreCase("solve")) {
+            solve(args);
+            return;
+        }
+
+        if (args.length >= 2 && args[0].equalsIgnoreCase("analyze")) {
+            analyze(args);
+            return;
+        }
+
         GameConfig config = initialSetup(args);
 
         while (true) {
@@ -108,8 +118,8 @@ public class TTT3 {
             gameMode = 1;
         }
 
-        AIPlayer aiPlayerX = null;
-        AIPlayer aiPlayerO = null;
+        Engine aiPlayerX = null;
+        Engine aiPlayerO = null;
         Player humanPlayer = null;
         boolean isPlayingAgainstAI = false;
         boolean isTwoPlayerGame = false;
@@ -125,8 +135,8 @@ public class TTT3 {
                 System.out.println("Starting a two-player game.");
                 break;
             case 3:
-                aiPlayerX = new AIPlayer(Player.X);
-                aiPlayerO = new AIPlayer(Player.O);
+                aiPlayerX = Engine.create(Player.X);
+                aiPlayerO = Engine.create(Player.O);
                 System.out.println("Starting an AI vs AI game.");
                 break;
             default:
@@ -205,9 +215,9 @@ public class TTT3 {
                 game.humanPlayer = config.humanPlayer;
                 Player aiSide = game.humanPlayer.other();
                 if (aiSide == Player.X && config.aiPlayerX == null) {
-                    config.aiPlayerX = new AIPlayer(Player.X);
+                    config.aiPlayerX = Engine.create(Player.X);
                 } else if (aiSide == Player.O && config.aiPlayerO == null) {
-                    config.aiPlayerO = new AIPlayer(Player.O);
+                    config.aiPlayerO = Engine.create(Player.O);
                 }
                 game.aiPlayerX = config.aiPlayerX;
                 game.aiPlayerO = config.aiPlayerO;
@@ -241,13 +251,14 @@ public class TTT3 {
                     }
                 } else if (!game.isGameOver) {
 
-                    AIPlayer currentAIPlayer = (game.nextPlayer == Player.X) ? config.aiPlayerX : config.aiPlayerO;
+                    Engine currentAIPlayer = (game.nextPlayer == Player.X) ? config.aiPlayerX : config.aiPlayerO;
                     if (currentAIPlayer != null) {
                         System.out.println("AI (" + game.nextPlayer + ") is thinking...");
                         int aiMove = currentAIPlayer.chooseBestMove(board);
                         board.makeMove(aiMove, game.nextPlayer);
                         System.out.println("AI (" + game.nextPlayer + ") chose position: " + aiMove);
                         saveBoardState(board);
+                        currentAIPlayer.startPondering(board);
 
                         if (config.aiPlayerX != null && config.aiPlayerO != null) {
                             try {
@@ -283,6 +294,11 @@ public class TTT3 {
 
             game.isGameOver = true;
             game.nextPlayer = game.nextPlayer.other();
+            for (Engine ai : new Engine[] { config.aiPlayerX, config.aiPlayerO }) {
+                if (ai != null) {
+                    ai.stopPondering();
+                }
+            }
             if (config.isPlayingAgainstAI) {
                 config.humanPlayer = null;
                 config.aiPlayerX = null;
@@ -352,6 +368,42 @@ public class TTT3 {
         }
     }
 
+    /**
+     * java TTT3 solve <board> [pn2|dfpn]
+     * Prints the exact game-theoretic value of the position for the side to move.
+     */
+    private static void solve(String[] args) {
+        Board board;
+        try {
+            board = Board.valueOf(args[1]);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid board configuration: " + e.getMessage());
+            return;
+        }
+        boolean depthFirst = args.length > 2 && args[2].equalsIgnoreCase("dfpn");
+        ProofNumberSearch solver = new ProofNumberSearch();
+        ProofNumberSearch.Result result = depthFirst ? solver.solveDepthFirst(board) : solver.solve(board);
+        System.out.println((depthFirst ? "df-pn: " : "PN2: ") + result);
+    }
+
+    /**
+     * java TTT3 analyze <board> [k] [depth]
+     * Prints the k best moves for the side to move with their scores and lines.
+     */
+    private static void analyze(String[] args) {
+        Board board;
+        try {
+            board = Board.valueOf(args[1]);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid board configuration: " + e.getMessage());
+            return;
+        }
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        AIPlayer analyst = new AIPlayer(Position.sideToMove(board), depth);
+        System.out.println(analyst.analyze(board, k));
+    }
+
     private static void clearSavedBoardState() {
         File file = new File(BOARD_STATE_FILE);
         if (file.exists()) {
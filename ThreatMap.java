@@ -0,0 +1,117 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+import java.util.Arrays;
+
+/**
+ * The threats one side has and can make, as cell masks, from one pass over the
+ * lines and one pass over the empty cells.
+ *
+ * A "two" is a line with two of the side's pieces and two empty cells, and a
+ * fork is a pair of twos that share an empty cell. cover[c] counts the twos with
+ * c among their empty cells, so the forks are the sum of cover[c] choose 2. A
+ * piece on an empty cell e only changes the twos through e: those through e stop
+ * being twos, and lines through e with one piece and no opponent piece become
+ * twos. A cell c other than e is on at most one line through e, so its cover
+ * changes by at most one, and the forks after e follow from cover alone instead
+ * of a rescan of every line.
+ *
+ * Instances are reused: compute() overwrites everything.
+ */
+public class ThreatMap {
+    // empty cells that complete one of the side's lines
+    public long wins;
+
+    // empty cells that make two threes at once
+    public long doubleThreats;
+
+    // empty cells after which the side has at least one fork
+    public long forkSquares;
+
+    // empty cells of the side's twos
+    public long twoCells;
+
+    // forks now
+    public int forks;
+
+    // forks after a piece on each empty cell, summed over the empty cells
+    public int forkTotal;
+
+    private final byte[] cover = new byte[Coordinate.NCubed];
+
+    public ThreatMap compute(long own, long opp) {
+        long empty = ~(own | opp);
+        Arrays.fill(cover, (byte) 0);
+        wins = 0;
+        doubleThreats = 0;
+        twoCells = 0;
+        forks = 0;
+        for (long line : Geometry.LINES) {
+            if ((line & opp) != 0) {
+                continue;
+            }
+            int pieces = Long.bitCount(line & own);
+            if (pieces == 3) {
+                wins |= line & empty;
+            } else if (pieces == 2) {
+                long cells = line & empty;
+                doubleThreats |= twoCells & cells;
+                twoCells |= cells;
+                for (long bits = cells; bits != 0; bits &= bits - 1) {
+                    int c = Long.numberOfTrailingZeros(bits);
+                    forks += cover[c]++;
+                }
+            }
+        }
+
+        forkSquares = 0;
+        forkTotal = 0;
+        for (long cells = empty; cells != 0; cells &= cells - 1) {
+            int e = Long.numberOfTrailingZeros(cells);
+            int forksAfter = forksAfter(own, opp, empty, e);
+            if (forksAfter > 0) {
+                forkSquares |= 1L << e;
+                forkTotal += forksAfter;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Forks with a piece of the side on the empty cell e.
+     */
+    private int forksAfter(long own, long opp, long empty, int e) {
+        int k = cover[e];
+        int after = forks - k * (k - 1) / 2;
+        long others = empty & ~(1L << e);
+        for (long line : Geometry.CELL_LINES[e]) {
+            if ((line & opp) != 0) {
+                continue;
+            }
+            int pieces = Long.bitCount(line & own);
+            if (pieces == 2) {
+                // no longer a two: its other empty cell loses one
+                after -= cover[Long.numberOfTrailingZeros(line & others)] - 1;
+            } else if (pieces == 1) {
+                // now a two: its other two empty cells gain one each
+                for (long bits = line & others; bits != 0; bits &= bits - 1) {
+                    after += cover[Long.numberOfTrailingZeros(bits)];
+                }
+            }
+        }
+        return after;
+    }
+
+    /**
+     * The twos through the cells of mask, counted once per two and cell.
+     */
+    public int twos(long mask) {
+        int count = 0;
+        for (long bits = mask & twoCells; bits != 0; bits &= bits - 1) {
+            count += cover[Long.numberOfTrailingZeros(bits)];
+        }
+        return count;
+    }
+}
@@ -0,0 +1,171 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+/**
+ * Threat-space search (VCF, "victory by continuous forcing") for 4x4x4 positions.
+ *
+ * The attacker only plays moves that leave a line with three of its pieces and one
+ * empty cell, so the defender's reply is forced. A move that leaves two such cells
+ * at once (a fork) wins. If the defender's forced reply creates a three of its own,
+ * the attacker must block it, and the block only continues the sequence if it is a
+ * threat as well. Because the branching factor is the handful of threat moves
+ * instead of every empty cell, sequences dozens of plies deep are found in
+ * milliseconds.
+ *
+ * Instances are not thread safe; each search thread should use its own.
+ */
+public class ThreatSearch {
+    static final int DEFAULT_MAX_THREATS = 24;
+    private static final int DEFAULT_NODE_LIMIT = 500_000;
+    private static final int FAIL_CACHE_SIZE = 1 << 14;
+
+    public static class Result {
+        public final int move;
+        public final int plies;
+        public final int[] sequence;
+        public final long nodes;
+        public final long micros;
+
+        Result(int move, int plies, int[] sequence, long nodes, long micros) {
+            this.move = move;
+            this.plies = plies;
+            this.sequence = sequence;
+            this.nodes = nodes;
+            this.micros = micros;
+        }
+
+        @Override
+        public String toString() {
+            return "win in " + plies + " plies via " + java.util.Arrays.toString(sequence) +
+                    " (" + nodes + " nodes, " + micros + " us)";
+        }
+    }
+
+    private final int maxThreats;
+    private final int nodeLimit;
+    private final long[] failKeys = new long[FAIL_CACHE_SIZE];
+    private final byte[] failDepths = new byte[FAIL_CACHE_SIZE];
+    private final int[] line = new int[2 * DEFAULT_MAX_THREATS + 2];
+    private long nodes;
+    private int sequenceLength;
+
+    public ThreatSearch() {
+        this(DEFAULT_MAX_THREATS, DEFAULT_NODE_LIMIT);
+    }
+
+    public ThreatSearch(int maxThreats, int nodeLimit) {
+        this.maxThreats = Math.min(maxThreats, DEFAULT_MAX_THREATS);
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Looks for a forced win for the attacker, assuming the attacker moves next.
+     *
+     * @return The winning line of play, or null if none was found within the limits.
+     */
+    public Result findWin(Board board, Player attacker) {
+        long start = System.nanoTime();
+        long att = (attacker == Player.X) ? board.xPositions : board.oPositions;
+        long def = (attacker == Player.X) ? board.oPositions : board.xPositions;
+        nodes = 0;
+        sequenceLength = 0;
+        java.util.Arrays.fill(failDepths, (byte) 0);
+
+        int move = search(att, def, Position.computeHash(att, def), maxThreats, 0);
+        long micros = (System.nanoTime() - start) / 1000;
+        if (move < 0) {
+            return null;
+        }
+        int[] sequence = java.util.Arrays.copyOf(line, sequenceLength);
+        return new Result(move, sequenceLength, sequence, nodes, micros);
+    }
+
+    public long nodes() {
+        return nodes;
+    }
+
+    /**
+     * @param key      Zobrist-style key of (att, def), with att in the X slots.
+     * @param threats  Remaining attacker moves allowed.
+     * @param ply      Index into the recorded line of play.
+     * @return The attacker's winning move, or -1.
+     */
+    private int search(long att, long def, long key, int threats, int ply) {
+        nodes++;
+        long occupied = att | def;
+
+        long wins = MoveOrdering.threatCells(att, occupied);
+        if (wins != 0) {
+            int move = Long.numberOfTrailingZeros(wins);
+            line[ply] = move;
+            sequenceLength = ply + 1;
+            return move;
+        }
+        if (threats <= 0 || nodes >= nodeLimit) {
+            return -1;
+        }
+
+        int slot = (int) (key & (FAIL_CACHE_SIZE - 1));
+        if (failKeys[slot] == key && failDepths[slot] >= threats) {
+            return -1;
+        }
+
+        long defWins = MoveOrdering.threatCells(def, occupied);
+        long candidates;
+        if (Long.bitCount(defWins) >= 2) {
+            return -1; // the defender wins next move whatever we do
+        } else if (defWins != 0) {
+            candidates = defWins; // forced block, it still has to be a threat
+        } else {
+            candidates = threatMoves(att, def);
+        }
+
+        for (long bits = candidates; bits != 0; bits &= bits - 1) {
+            int move = Long.numberOfTrailingZeros(bits);
+            long newAtt = att | (1L << move);
+            long newOccupied = occupied | (1L << move);
+            long threatsAfter = MoveOrdering.threatCells(newAtt, newOccupied);
+            if (threatsAfter == 0) {
+                continue;
+            }
+            line[ply] = move;
+            if (Long.bitCount(threatsAfter) >= 2) {
+                // fork: the defender can only block one of them
+                int other = Long.numberOfTrailingZeros(threatsAfter);
+                line[ply + 1] = other;
+                line[ply + 2] = Long.numberOfTrailingZeros(threatsAfter & ~(1L << other));
+                sequenceLength = ply + 3;
+                return move;
+            }
+            int reply = Long.numberOfTrailingZeros(threatsAfter);
+            line[ply + 1] = reply;
+            long newDef = def | (1L << reply);
+            long newKey = key ^ Position.ZOBRIST[move] ^ Position.ZOBRIST[Coordinate.NCubed + reply];
+            if (search(newAtt, newDef, newKey, threats - 1, ply + 2) >= 0) {
+                return move;
+            }
+        }
+
+        failKeys[slot] = key;
+        failDepths[slot] = (byte) threats;
+        return -1;
+    }
+
+    /**
+     * Empty cells that leave the attacker with three in a line and the fourth cell
+     * empty: the empty cells of every line holding two attacker pieces and no
+     * defender pieces.
+     */
+    static long threatMoves(long att, long def) {
+        long occupied = att | def;
+        long moves = 0L;
+        for (long linePositions : Geometry.LINES) {
+            if ((linePositions & def) == 0 && Long.bitCount(linePositions & att) == 2) {
+                moves |= linePositions & ~occupied;
+            }
+        }
+        return moves;
+    }
+}
@@ -0,0 +1,215 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+/**
+ * Decides how long each move may take.
+ *
+ * With a game clock (TIME_BASE_MS plus TIME_INCREMENT_MS per move) a move aims for
+ * about remaining / movesLeft + increment, where movesLeft is half the empty cells,
+ * and may take up to three times that. With a fixed TIME_PER_MOVE_MS it may take
+ * that time and aims for TIME_SOFT_FRACTION of it. The hard deadline stops the
+ * search wherever it is. The soft deadline is the point after which no new
+ * iteration starts. It starts at the target and is pushed back when the best move
+ * changes or the score drops between iterations, up to twice the target and never
+ * past the hard deadline. An iteration is also not started when the measured
+ * branching factor says it cannot finish before the hard deadline.
+ */
+public class TimeManager {
+    private static final long NANOS_PER_MS = 1_000_000L;
+    private static final long UNLIMITED = 999_999_999_999L; // effectively no time limit
+
+    // a move may use up to this many times its target on a game clock, but never
+    // more than this share of what is left on the clock
+    private static final double HARD_TARGET_RATIO = 3.0;
+    private static final double HARD_CLOCK_SHARE = 0.4;
+    private static final int MIN_MOVES_LEFT = 4;
+
+    // extensions, in units of the target, up to MAX_SOFT_RATIO targets in all; the
+    // first iterations are too shallow for their best move or score to mean much
+    private static final double FLIP_EXTENSION = 0.5;
+    private static final double DROP_EXTENSION = 0.5;
+    private static final double MAX_SOFT_RATIO = 2.0;
+    private static final long SCORE_DROP = 400;
+    private static final int MIN_EXTENSION_DEPTH = 3;
+
+    // lower bound on the predicted growth of the next iteration
+    private static final double MIN_BRANCHING = 2.0;
+
+    private final boolean limited;
+    private final boolean clock;
+    private final long perMoveNanos;
+    private final long incrementNanos;
+    private final double softFraction;
+    private long remainingNanos;
+
+    private volatile long start;
+    private volatile long targetNanos;
+    private volatile long softNanos;
+    private volatile long hardNanos = UNLIMITED;
+    private volatile boolean pondering;
+    private long lastIterationNanos;
+    private long lastIterationNodes;
+    private double branchingFactor;
+    private int extensions;
+    private long lastMoveNanos;
+
+    public TimeManager(EngineConfig config) {
+        this(true, config);
+    }
+
+    private TimeManager(boolean limited, EngineConfig config) {
+        this.limited = limited;
+        this.clock = config.TIME_BASE_MS > 0;
+        this.perMoveNanos = config.TIME_PER_MOVE_MS * NANOS_PER_MS;
+        this.incrementNanos = config.TIME_INCREMENT_MS * NANOS_PER_MS;
+        this.softFraction = config.TIME_SOFT_FRACTION;
+        this.remainingNanos = config.TIME_BASE_MS * NANOS_PER_MS;
+    }
+
+    /**
+     * No deadlines at all, for fixed-depth searches.
+     */
+    public static TimeManager unlimited() {
+        return new TimeManager(false, new EngineConfig());
+    }
+
+    public boolean isLimited() {
+        return limited;
+    }
+
+    /**
+     * Sets the deadlines for a move starting now.
+     */
+    public synchronized void startMove(int empties) {
+        start = System.nanoTime();
+        pondering = false;
+        lastIterationNanos = 0;
+        lastIterationNodes = 0;
+        branchingFactor = 0;
+        extensions = 0;
+        if (!limited) {
+            targetNanos = softNanos = hardNanos = UNLIMITED;
+        } else if (clock) {
+            int movesLeft = Math.max(MIN_MOVES_LEFT, (empties + 1) / 2);
+            targetNanos = remainingNanos / movesLeft + incrementNanos;
+            hardNanos = Math.min((long) (targetNanos * HARD_TARGET_RATIO),
+                    (long) ((remainingNanos + incrementNanos) * HARD_CLOCK_SHARE));
+            targetNanos = Math.min(targetNanos, hardNanos);
+            softNanos = targetNanos;
+        } else {
+            hardNanos = perMoveNanos;
+            targetNanos = (long) (perMoveNanos * softFraction);
+            softNanos = targetNanos;
+        }
+    }
+
+    /**
+     * A search on the opponent's time: no deadlines until startMove() is called.
+     */
+    public synchronized void startPonder() {
+        start = System.nanoTime();
+        pondering = true;
+        lastIterationNanos = 0;
+        lastIterationNodes = 0;
+        branchingFactor = 0;
+        extensions = 0;
+    }
+
+    /**
+     * Charges the move's time to the clock and adds the increment.
+     */
+    public synchronized void endMove() {
+        lastMoveNanos = System.nanoTime() - start;
+        if (limited && clock && !pondering) {
+            remainingNanos = Math.max(0, remainingNanos - lastMoveNanos) + incrementNanos;
+        }
+    }
+
+    public long hardDeadline() {
+        return start + hardNanos;
+    }
+
+    /**
+     * For searches that can stop at any point rather than between iterations.
+     */
+    public long softDeadline() {
+        return start + softNanos;
+    }
+
+    /**
+     * The length of the hard budget, for progress output.
+     */
+    public long hardNanos() {
+        return hardNanos;
+    }
+
+    /**
+     * Records a finished iteration and decides whether to start the next one.
+     *
+     * @param iterationNodes   Nodes searched by this iteration alone.
+     * @param bestMoveChanged  The best move differs from the previous iteration's.
+     * @param scoreDrop        Previous iteration's score minus this one's.
+     */
+    public synchronized boolean nextIteration(int depth, long iterationNanos, long iterationNodes,
+                                              boolean bestMoveChanged, long scoreDrop) {
+        if (lastIterationNodes > 0 && iterationNodes > 0) {
+            branchingFactor = (double) iterationNodes / lastIterationNodes;
+        }
+        lastIterationNanos = iterationNanos;
+        lastIterationNodes = iterationNodes;
+        if (!limited || pondering) {
+            return true;
+        }
+
+        if (depth >= MIN_EXTENSION_DEPTH) {
+            if (bestMoveChanged) {
+                extend(FLIP_EXTENSION);
+            }
+            if (scoreDrop >= SCORE_DROP) {
+                extend(DROP_EXTENSION);
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        if (elapsed >= softNanos) {
+            return false;
+        }
+        // the next iteration would be cut off by the hard deadline anyway
+        double factor = Math.max(MIN_BRANCHING, branchingFactor);
+        return elapsed + (long) (lastIterationNanos * factor) < hardNanos;
+    }
+
+    private void extend(double targets) {
+        long limit = Math.min(hardNanos, (long) (targetNanos * MAX_SOFT_RATIO));
+        if (softNanos < limit) {
+            softNanos = Math.min(limit, softNanos + (long) (targetNanos * targets));
+            extensions++;
+        }
+    }
+
+    public long remainingMillis() {
+        return remainingNanos / NANOS_PER_MS;
+    }
+
+    public long targetMillis() {
+        return targetNanos / NANOS_PER_MS;
+    }
+
+    public long softMillis() {
+        return softNanos / NANOS_PER_MS;
+    }
+
+    public long lastMoveMillis() {
+        return lastMoveNanos / NANOS_PER_MS;
+    }
+
+    public double branchingFactor() {
+        return branchingFactor;
+    }
+
+    public int extensions() {
+        return extensions;
+    }
+}
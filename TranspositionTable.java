@@ -0,0 +1,162 @@
+// Owen Gregson
+// Artificial Intelligence
+// TTT Checkpoint #3
+// Dec 18, 2024
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size, lock-free transposition table backed by a single long[].
+ *
+ * The table is split into buckets of two slots. Slot 0 is depth-preferred and only
+ * gives way to deeper searches or entries from an older search generation; slot 1
+ * is always-replace. Every slot is two longs: (key ^ data, data). A reader only
+ * accepts a slot when (word0 ^ word1) reproduces the probed key, so torn or racing
+ * writes from other search threads are rejected instead of being locked out.
+ *
+ * Data word layout:
+ *   bits  0-31  value (int)
+ *   bits 32-39  depth
+ *   bits 40-41  bound (EXACT, LOWER, UPPER)
+ *   bits 42-49  generation
+ *   bits 50-56  best move + 1 (0 when there is none)
+ *   bit  63     occupied marker, so an empty data word never verifies
+ */
+public class TranspositionTable {
+    public static final int EXACT = 0;
+    public static final int LOWER = 1;
+    public static final int UPPER = 2;
+
+    private static final int SLOTS_PER_BUCKET = 2;
+    private static final int LONGS_PER_SLOT = 2;
+    private static final int LONGS_PER_BUCKET = SLOTS_PER_BUCKET * LONGS_PER_SLOT;
+    private static final int BYTES_PER_BUCKET = LONGS_PER_BUCKET * Long.BYTES;
+    private static final int OCCUPANCY_SAMPLE = 4096;
+    private static final long OCCUPIED = 1L << 63;
+
+    private final long[] table;
+    private final int bucketMask;
+    private volatile int generation;
+
+    public TranspositionTable(int sizeMb) {
+        long bytes = Math.max(1L, sizeMb) * 1024L * 1024L;
+        long buckets = Long.highestOneBit(Math.max(1L, bytes / BYTES_PER_BUCKET));
+        // keep the backing array addressable by an int index
+        buckets = Math.min(buckets, 1L << 28);
+        this.table = new long[(int) (buckets * LONGS_PER_BUCKET)];
+        this.bucketMask = (int) (buckets - 1);
+    }
+
+    /**
+     * Starts a new search generation. Entries written by older generations are
+     * treated as stale and will be overwritten first.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0L);
+        generation = 0;
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param key The Zobrist key of the position.
+     * @return The packed data word, or 0 if the position is not stored.
+     */
+    public long probe(long key) {
+        int base = bucketIndex(key);
+        for (int slot = 0; slot < SLOTS_PER_BUCKET; slot++) {
+            int i = base + slot * LONGS_PER_SLOT;
+            long data = table[i + 1];
+            if ((table[i] ^ data) == key && data != 0) {
+                return data;
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * Stores a search result, using slot 0 when it is deeper (or the old entry is
+     * stale) and slot 1 otherwise.
+     */
+    public void store(long key, long value, int depth, int bound, int move) {
+        int gen = generation;
+        long data = pack(value, depth, bound, gen, move);
+        int base = bucketIndex(key);
+
+        long deepData = table[base + 1];
+        boolean sameKey = (table[base] ^ deepData) == key;
+        if (deepData == 0 || sameKey || depth(deepData) <= depth || generation(deepData) != gen) {
+            table[base + 1] = data;
+            table[base] = key ^ data;
+        } else {
+            table[base + 3] = data;
+            table[base + 2] = key ^ data;
+        }
+    }
+
+    /**
+     * Estimates the share of slots written during the current generation (0.0 - 1.0)
+     * from the first buckets of the table.
+     */
+    public double occupancy() {
+        int gen = generation;
+        int buckets = Math.min(OCCUPANCY_SAMPLE, bucketMask + 1);
+        int used = 0;
+        for (int b = 0; b < buckets; b++) {
+            for (int slot = 0; slot < SLOTS_PER_BUCKET; slot++) {
+                long data = table[b * LONGS_PER_BUCKET + slot * LONGS_PER_SLOT + 1];
+                if (data != 0 && generation(data) == gen) {
+                    used++;
+                }
+            }
+        }
+        return (double) used / (buckets * SLOTS_PER_BUCKET);
+    }
+
+    public int capacity() {
+        return (bucketMask + 1) * SLOTS_PER_BUCKET;
+    }
+
+    public long sizeBytes() {
+        return (long) table.length * Long.BYTES;
+    }
+
+    private int bucketIndex(long key) {
+        // the low bits pick the bucket; the full key is still verified on probe
+        return ((int) (key ^ (key >>> 32)) & bucketMask) * LONGS_PER_BUCKET;
+    }
+
+    private static long pack(long value, int depth, int bound, int gen, int move) {
+        int v = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+        return OCCUPIED
+                | ((long) ((move + 1) & 0x7F) << 50)
+                | ((long) (gen & 0xFF) << 42)
+                | ((long) (bound & 0x3) << 40)
+                | ((long) (depth & 0xFF) << 32)
+                | (v & 0xFFFFFFFFL);
+    }
+
+    public static long value(long data) {
+        return (int) data;
+    }
+
+    public static int depth(long data) {
+        return (int) ((data >>> 32) & 0xFF);
+    }
+
+    public static int bound(long data) {
+        return (int) ((data >>> 40) & 0x3);
+    }
+
+    public static int move(long data) {
+        return (int) ((data >>> 50) & 0x7F) - 1;
+    }
+
+    private static int generation(long data) {
+        return (int) ((data >>> 42) & 0xFF);
+    }
+}